@@ -0,0 +1,50 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import net.minecraftforge.installer.actions.ProgressCallback;
+
+class BenchmarkUtils {
+    // Fixed seed, so every run hashes and downloads exactly the same bytes.
+    private static final long SEED = 0x466f726765L;
+
+    static final ProgressCallback SILENT = (message, priority) -> {};
+
+    static byte[] data(int size) {
+        byte[] ret = new byte[size];
+        new Random(SEED).nextBytes(ret);
+        return ret;
+    }
+
+    static void delete(File dir) throws IOException {
+        if (dir == null || !dir.exists())
+            return;
+        try (Stream<Path> walk = Files.walk(dir.toPath())) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
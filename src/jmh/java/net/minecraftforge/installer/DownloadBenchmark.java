@@ -0,0 +1,113 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.sun.net.httpserver.HttpServer;
+
+import net.minecraftforge.installer.json.Artifact;
+import net.minecraftforge.installer.json.Util;
+import net.minecraftforge.installer.json.Version.Library;
+
+/*
+ * Runs downloadLibrary end to end against an HTTP server on loopback, so the numbers cover the installer and not the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadBenchmark {
+    private static final String PATH = "net/minecraftforge/bench/data/1.0/data-1.0.jar";
+
+    @Param({"65536", "8388608"})
+    public int size;
+
+    private HttpServer server;
+    private File root;
+    private Library library;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        byte[] data = BenchmarkUtils.data(size);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, data.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data);
+            }
+        });
+        server.start();
+
+        root = Files.createTempDirectory("installer_bench").toFile();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + '/' + PATH;
+        library = Util.GSON.fromJson("{\"name\": \"net.minecraftforge.bench:data:1.0\", \"downloads\": {\"artifact\": {" +
+            "\"path\": \"" + PATH + "\", \"url\": \"" + url + "\", \"sha1\": \"" + HashFunction.SHA1.hash(data) + "\", \"size\": " + size + "}}}", Library.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        server.stop(0);
+        BenchmarkUtils.delete(root);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Missing {
+        @Setup(Level.Invocation)
+        public void delete(DownloadBenchmark bench) {
+            bench.library.getName().getLocalPath(bench.root).delete();
+        }
+    }
+
+    @Benchmark
+    public boolean download(Missing missing) {
+        return downloadLibrary();
+    }
+
+    // The second install of the same version, where everything is already there and only has to be checked.
+    @Benchmark
+    public boolean upToDate() {
+        return downloadLibrary();
+    }
+
+    private boolean downloadLibrary() {
+        List<Artifact> grabbed = new ArrayList<>();
+        boolean ret = DownloadUtils.downloadLibrary(BenchmarkUtils.SILENT, null, library, root, s -> true, grabbed);
+        if (!ret)
+            throw new IllegalStateException("Download failed");
+        return ret;
+    }
+}
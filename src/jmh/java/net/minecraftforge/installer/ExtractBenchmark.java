@@ -0,0 +1,75 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.minecraftforge.installer.json.Artifact;
+
+/*
+ * The build copies the gson jar into the benchmark jar under maven/, the same way installers embed libraries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExtractBenchmark {
+    private static final Artifact ARTIFACT = Artifact.from("com.google.code.gson:gson:2.8.6");
+
+    private File dir;
+    private String sha1;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("installer_bench").toFile();
+        try (InputStream stream = ExtractBenchmark.class.getResourceAsStream("/maven/" + ARTIFACT.getPath())) {
+            if (stream == null)
+                throw new IllegalStateException("Missing /maven/" + ARTIFACT.getPath() + " in benchmark resources");
+            sha1 = HashFunction.SHA1.hash(stream);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        BenchmarkUtils.delete(dir);
+    }
+
+    @Benchmark
+    public boolean extractLibrary() {
+        return DownloadUtils.extractFile(ARTIFACT, new File(dir, "gson.jar"), sha1);
+    }
+
+    @Benchmark
+    public boolean extractData() {
+        return DownloadUtils.extractFile("/version.json", new File(dir, "version.json"));
+    }
+}
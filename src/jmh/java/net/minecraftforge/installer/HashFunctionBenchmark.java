@@ -0,0 +1,85 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashFunctionBenchmark {
+    // A small pom, a typical library and one of the large jars like the client jar.
+    @Param({"4096", "1048576", "33554432"})
+    public int size;
+
+    private byte[] data;
+    private File dir;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = BenchmarkUtils.data(size);
+        dir = Files.createTempDirectory("installer_bench").toFile();
+        file = new File(dir, "data.bin");
+        Files.write(file.toPath(), data);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        BenchmarkUtils.delete(dir);
+    }
+
+    @Benchmark
+    public String hashBytes() {
+        return HashFunction.SHA1.hash(data);
+    }
+
+    @Benchmark
+    public String hashFile() throws IOException {
+        return HashFunction.SHA1.hash(file);
+    }
+
+    /*
+     * What hashing a file used to cost: the whole file on the heap, a new digest each time, and the hex built through BigInteger.
+     * Kept as the baseline the current implementation is measured against.
+     */
+    @Benchmark
+    public String hashFileLegacy() throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        MessageDigest digest = HashFunction.SHA1.get();
+        String hex = new BigInteger(1, digest.digest(bytes)).toString(16);
+        return ("0000000000000000000000000000000000000000" + hex).substring(hex.length());
+    }
+}
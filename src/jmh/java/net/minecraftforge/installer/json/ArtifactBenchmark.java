@@ -0,0 +1,73 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.json;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArtifactBenchmark {
+    // The shapes found in real profiles: plain, classifier, extension, and both.
+    private static final String[] DESCRIPTORS = {
+        "net.minecraftforge:forge:1.16.5-36.2.0",
+        "org.apache.logging.log4j:log4j-core:2.11.2",
+        "net.minecraftforge:forge:1.16.5-36.2.0:universal",
+        "org.lwjgl:lwjgl-glfw:3.2.2:natives-windows",
+        "de.oceanlabs.mcp:mcp_config:1.16.5-20210115.111550@zip",
+        "net.minecraft:client:1.16.5-20210115.111550:mappings@txt"
+    };
+
+    private final File root = new File("libraries");
+
+    // Bypasses the interning in Artifact.from, so this measures the parser itself.
+    @Benchmark
+    public void parse(Blackhole bh) {
+        for (String desc : DESCRIPTORS)
+            bh.consume(Artifact.parse(desc));
+    }
+
+    @Benchmark
+    public void parseLocalPath(Blackhole bh) {
+        for (String desc : DESCRIPTORS)
+            bh.consume(Artifact.parse(desc).getLocalPath(root));
+    }
+
+    // What repeat lookups cost once a descriptor has been seen.
+    @Benchmark
+    public void interned(Blackhole bh) {
+        for (String desc : DESCRIPTORS)
+            bh.consume(Artifact.from(desc));
+    }
+
+    @Benchmark
+    public void internedLocalPath(Blackhole bh) {
+        for (String desc : DESCRIPTORS)
+            bh.consume(Artifact.from(desc).getLocalPath(root));
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import net.minecraftforge.installer.json.Util;
+
+/**
+ * A machine wide store of downloaded files keyed by their sha1, shared by every install that points at the same {@link #CACHE_DIR}.
+ * Files are hard linked into the libraries directory when both are on the same file system, and copied otherwise.
+ *
+ * Objects are only ever added by moving a verified file into place, so reading them needs no locking. They are still hashed again the
+ * first time each run uses them, anything can write to a hard linked copy, and a bad object is evicted rather than spread to every install. The index of sizes and
+ * last use times is merged and trimmed to {@link #MAX_SIZE} under a file lock in {@link #save()}, least recently used first.
+ */
+public class ArtifactCache {
+    public static File CACHE_DIR = null;
+    public static long MAX_SIZE = 4L * 1024 * 1024 * 1024;
+    private static final String INDEX = "index.json";
+    private static final Type TYPE = new TypeToken<Map<String, Entry>>(){}.getType();
+    private static final Map<File, ArtifactCache> CACHES = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final Path objects;
+    // Use times recorded by this process since the last save, merged into the shared index then.
+    private final Map<String, Entry> used = new ConcurrentHashMap<>();
+    // Objects whose content was checked against their name since this process started.
+    private final Set<String> verified = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return The cache in {@link #CACHE_DIR}, or null if there is no shared cache.
+     */
+    public static ArtifactCache get() {
+        File dir = CACHE_DIR;
+        return dir == null ? null : CACHES.computeIfAbsent(dir.getAbsoluteFile(), ArtifactCache::new);
+    }
+
+    private ArtifactCache(File root) {
+        this.root = root.toPath();
+        this.objects = this.root.resolve("objects");
+    }
+
+    /**
+     * @return True if the cache holds a file with this sha1. It may still be evicted by another installer before it is fetched.
+     */
+    public boolean has(String sha1) {
+        Path object = getObject(sha1);
+        return object != null && Files.isRegularFile(object);
+    }
+
+    /**
+     * Places the cached file with this sha1 at target, replacing anything there.
+     * @return False if the cache doesn't have it or it couldn't be placed.
+     */
+    public boolean fetch(String sha1, File target) {
+        Path object = getObject(sha1);
+        if (object == null || !Files.isRegularFile(object))
+            return false;
+        try {
+            if (!verified.contains(sha1)) {
+                String actual = HashFunction.SHA1.hash(object);
+                if (!sha1.equalsIgnoreCase(actual)) {
+                    System.out.println("Evicting corrupt shared cache entry " + sha1 + ", content hashes to " + actual);
+                    Files.deleteIfExists(object);
+                    return false;
+                }
+                verified.add(sha1);
+            }
+            Path to = target.toPath();
+            Files.createDirectories(to.getParent());
+            Path temp = DownloadUtils.createTemp(to.getParent(), to.getFileName().toString());
+            try {
+                link(object, temp);
+                DownloadUtils.move(temp, to);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            used.put(sha1, new Entry(Files.size(to)));
+            return true;
+        } catch (IOException e) {
+            // Evicted by another installer while we were linking it, or the cache is unreadable. Either way we fall back to fetching it ourselves.
+            System.out.println("Could not use shared cache entry " + sha1 + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Adds a file that was just verified against this sha1.
+     */
+    public void store(String sha1, File file) {
+        Path object = getObject(sha1);
+        if (object == null)
+            return;
+        try {
+            if (!Files.isRegularFile(object)) {
+                Files.createDirectories(object.getParent());
+                Path temp = DownloadUtils.createTemp(object.getParent(), sha1);
+                try {
+                    link(file.toPath(), temp);
+                    DownloadUtils.move(temp, object);
+                    verified.add(sha1);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+            used.put(sha1, new Entry(Files.size(object)));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Merges the use times of this run into the shared index and evicts the least recently used objects until the cache fits in
+     * {@link #MAX_SIZE}. Holds an exclusive lock on the cache while doing so, other installers wait for it.
+     */
+    public synchronized void save() {
+        if (used.isEmpty())
+            return;
+        try {
+            Files.createDirectories(root);
+            try (FileChannel channel = FileChannel.open(root.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.lock(); // Released when the channel is closed.
+                Path file = root.resolve(INDEX);
+                Map<String, Entry> index = new TreeMap<>();
+                if (Files.isRegularFile(file)) {
+                    try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+                        Map<String, Entry> loaded = Util.GSON.fromJson(reader, TYPE);
+                        if (loaded != null)
+                            loaded.forEach((k, v) -> { if (k != null && v != null) index.put(k, v); });
+                    } catch (JsonParseException e) {
+                        System.out.println("Rebuilding invalid shared cache index " + file + ": " + e.getMessage());
+                    }
+                }
+                for (String sha1 : new ArrayList<>(used.keySet())) {
+                    Entry entry = used.remove(sha1);
+                    Entry old = index.get(sha1);
+                    if (old == null || old.used < entry.used)
+                        index.put(sha1, entry);
+                }
+
+                index.keySet().removeIf(sha1 -> getObject(sha1) == null || !Files.isRegularFile(getObject(sha1)));
+                long total = 0;
+                for (Entry entry : index.values())
+                    total += entry.size;
+                if (total > MAX_SIZE) {
+                    List<Map.Entry<String, Entry>> oldest = new ArrayList<>(index.entrySet());
+                    oldest.sort((a, b) -> Long.compare(a.getValue().used, b.getValue().used));
+                    for (Map.Entry<String, Entry> entry : oldest) {
+                        if (total <= MAX_SIZE)
+                            break;
+                        Files.deleteIfExists(getObject(entry.getKey()));
+                        index.remove(entry.getKey());
+                        total -= entry.getValue().size;
+                    }
+                }
+
+                Path temp = DownloadUtils.createTemp(root, INDEX);
+                try {
+                    try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                        Util.GSON.toJson(index, TYPE, writer);
+                    }
+                    DownloadUtils.move(temp, file);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path getObject(String sha1) {
+        if (sha1 == null || sha1.length() != 40)
+            return null;
+        for (int x = 0; x < sha1.length(); x++) {
+            if (Character.digit(sha1.charAt(x), 16) < 0)
+                return null;
+        }
+        String name = sha1.toLowerCase(Locale.ROOT);
+        return objects.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static void link(Path existing, Path link) throws IOException {
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static class Entry {
+        private long size;
+        private long used;
+
+        private Entry(long size) {
+            this.size = size;
+            this.used = System.currentTimeMillis();
+        }
+    }
+}
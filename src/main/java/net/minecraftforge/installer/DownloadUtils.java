@@ -22,12 +22,33 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Predicate;
 
 import net.minecraftforge.installer.actions.ProgressCallback;
@@ -44,8 +65,26 @@ public class DownloadUtils {
     public static final String MANIFEST_URL = "https://launchermeta.mojang.com/mc/game/version_manifest.json";
 
     public static boolean OFFLINE_MODE = false;
-
-    public static boolean downloadLibrary(ProgressCallback monitor, Mirror mirror, Library library, File root, Predicate<String> optional, List<Artifact> grabbed) {
+    // Number of libraries fetched at once, and how many of those may talk to the same server.
+    public static int DOWNLOAD_THREADS = 8;
+    public static int MAX_HOST_CONNECTIONS = 4;
+    // Timeouts in milliseconds, and whether to stay on URLConnection even when java.net.http.HttpClient is available.
+    public static int CONNECT_TIMEOUT = 5000;
+    public static int READ_TIMEOUT = 5000;
+    public static boolean LEGACY_TRANSPORT = false;
+    // Attempts per download, broken transfers are resumed where the server allows it.
+    public static int DOWNLOAD_ATTEMPTS = 3;
+    // Large downloads are split into ranges of at least SEGMENT_SIZE bytes fetched in parallel, at most MAX_SEGMENTS at once. 1 disables it.
+    public static int MAX_SEGMENTS = 4;
+    public static int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static Transport transport;
+
+    private static final Map<String, Semaphore> HOST_LIMITS = new ConcurrentHashMap<>();
+    // Shared cache downloads currently running, by sha1, so installs running side by side fetch each file once.
+    private static final Map<String, CompletableFuture<Boolean>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    public static boolean downloadLibrary(ProgressCallback monitor, MirrorSelector mirrors, Library library, File root, Predicate<String> optional, List<Artifact> grabbed) {
         Artifact artifact = library.getName();
         File target = artifact.getLocalPath(root);
         LibraryDownload download = library.getDownloads() == null ? null :  library.getDownloads().getArtifact();
@@ -60,11 +99,13 @@ public class DownloadUtils {
         }
 
         monitor.message(String.format("Considering library %s", artifact.getDescriptor()));
+        HashCache cache = HashCache.get(root);
 
         if (target.exists()) {
             if (download.getSha1() != null) {
-                String sha1 = getSha1(target);
+                String sha1 = cache.getSha1(target);
                 if (download.getSha1().equals(sha1)) {
+                    InstallMetrics.count("libraries.upToDate");
                     monitor.message("  File exists: Checksum validated.");
                     return true;
                 }
@@ -83,35 +124,46 @@ public class DownloadUtils {
 
         target.getParentFile().mkdirs();
 
+        ArtifactCache shared = ArtifactCache.get();
+        if (shared != null && download.getSha1() != null && shared.fetch(download.getSha1(), target)) {
+            InstallMetrics.count("sharedCache.hits");
+            monitor.message("  Found in shared cache: " + download.getSha1());
+            cache.put(target, download.getSha1());
+            grabbed.add(artifact);
+            return true;
+        }
+
+        if (shared != null && download.getSha1() != null)
+            InstallMetrics.count("sharedCache.misses");
+
         // Try extracting first
-        try (final InputStream input = DownloadUtils.class.getResourceAsStream("/maven/" + artifact.getPath())) {
-            if (input != null) {
-                monitor.message("  Extracting library from /maven/" + artifact.getPath());
-                Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        JarExtractor jar = JarExtractor.get();
+        if (jar.has("maven/" + artifact.getPath())) {
+            monitor.message("  Extracting library from /maven/" + artifact.getPath());
+            try {
+                String sha1 = jar.extract("maven/" + artifact.getPath(), target, download.getSha1());
                 if (download.getSha1() != null) {
-                    String sha1 = getSha1(target);
                     if (download.getSha1().equals(sha1)) {
                         monitor.message("    Extraction completed: Checksum validated.");
+                        cache.put(target, sha1);
+                        if (shared != null)
+                            shared.store(sha1, target);
                         grabbed.add(artifact);
                         return true;
                     }
-                    monitor.message("    Extraction failed: Checksum invalid, deleting file:");
+                    monitor.message("    Extraction failed: Checksum invalid, discarding file:");
                     monitor.message("      Expected: " + download.getSha1());
                     monitor.message("      Actual:   " + sha1);
-                    if (!target.delete()) {
-                        monitor.stage("      Failed to delete file, aborting.");
-                        return false;
-                    }
                     return false;
                 } else {
                     monitor.message("    Extraction completed: No checksum, Assuming valid.");
                 }
                 grabbed.add(artifact);
                 return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
         }
 
         String url = download.getUrl();
@@ -120,105 +172,467 @@ public class DownloadUtils {
             return false;
         }
 
-        if (download(monitor, mirror, download, target)) {
-            grabbed.add(artifact);
-            return true;
+        String sha1 = download.getSha1();
+        CompletableFuture<Boolean> fetching = null;
+        if (shared != null && sha1 != null) {
+            // Another install in this JVM may be downloading the same file right now, wait for it and link its copy instead.
+            CompletableFuture<Boolean> mine = new CompletableFuture<>();
+            CompletableFuture<Boolean> other = IN_FLIGHT.putIfAbsent(sha1, mine);
+            if (other == null) {
+                fetching = mine;
+            } else if (other.join() && shared.fetch(sha1, target)) {
+                monitor.message("  Found in shared cache: " + sha1);
+                cache.put(target, sha1);
+                grabbed.add(artifact);
+                return true;
+            }
+        }
+
+        boolean success = false;
+        try {
+            if (download(monitor, mirrors, download, target)) {
+                cache.put(target, sha1);
+                if (shared != null && sha1 != null)
+                    shared.store(sha1, target);
+                grabbed.add(artifact);
+                success = true;
+            }
+            return success;
+        } finally {
+            if (fetching != null) {
+                IN_FLIGHT.remove(sha1, fetching);
+                fetching.complete(success);
+            }
         }
-        return false;
     }
 
-    public static boolean download(ProgressCallback monitor, Mirror mirror, LibraryDownload download, File target) {
+    /*
+     * Tries the mirrors best first, moving on to the next when one fails so the rest of the install starts there too,
+     * and falls back to the original url when none of them work.
+     */
+    public static boolean download(ProgressCallback monitor, MirrorSelector mirrors, LibraryDownload download, File target) {
         String url = download.getUrl();
-        if (!url.startsWith(LIBRARIES_URL) && mirror != null)
-            url = mirror.getUrl() + download.getPath();
-        return download(monitor, mirror, download, target, url);
+        if (url.startsWith(LIBRARIES_URL) || mirrors == null)
+            return download(monitor, null, null, download, target, url);
+
+        for (Mirror mirror : mirrors.getMirrors()) {
+            if (download(monitor, mirrors, mirror, download, target, mirror.getUrl() + download.getPath()))
+                return true;
+            if (OFFLINE_MODE || Thread.currentThread().isInterrupted())
+                return false;
+            mirrors.failure(mirror);
+            monitor.message("    Mirror " + mirror.getName() + " failed, trying the next one");
+        }
+        return download(monitor, null, null, download, target, url);
     }
 
     public static boolean download(ProgressCallback monitor, Mirror mirror, Download download, File target) {
-        return download(monitor, mirror, download, target, download.getUrl());
+        return download(monitor, null, mirror, download, target, download.getUrl());
     }
 
-    private static boolean download(ProgressCallback monitor, Mirror mirror, Download download, File target, String url) {
+    /*
+     * Mirror throughput is timed from when the host permit is acquired, waiting behind our own downloads says nothing about the mirror.
+     */
+    private static boolean download(ProgressCallback monitor, MirrorSelector mirrors, Mirror mirror, Download download, File target, String url) {
         monitor.message("  Downloading library from " + url);
+        if (OFFLINE_MODE) {
+            System.out.println("Offline Mode: Not downloading: " + url);
+            return false;
+        }
+
+        Semaphore limit = getHostLimit(url);
         try {
-            URLConnection connection = getConnection(url);
-            if (connection != null) {
-                Files.copy(connection.getInputStream(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        long start = System.nanoTime();
+        int attempt = 0;
+        boolean success = false;
+        try {
+            while (true) {
+                attempt++;
+                try {
+                    String sha1 = download.getSha1() == null ? downloadFully(target, url) : downloadResumable(monitor, download, target, url);
+                    if (sha1 == null)
+                        return false;
 
-                if (download.getSha1() != null) {
-                    String sha1 = getSha1(target);
+                    if (download.getSha1() == null) {
+                        monitor.message("    Download completed: No checksum, Assuming valid.");
+                        success = true;
+                        return true;
+                    }
                     if (download.getSha1().equals(sha1)) {
                         monitor.message("    Download completed: Checksum validated.");
+                        success = true;
                         return true;
                     }
-                    monitor.message("    Download failed: Checksum invalid, deleting file:");
+                    monitor.message("    Download failed: Checksum invalid, discarding file:");
                     monitor.message("      Expected: " + download.getSha1());
                     monitor.message("      Actual:   " + sha1);
-                    if (!target.delete()) {
-                        monitor.stage("      Failed to delete file, aborting.");
+                    return false;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    if (attempt >= DOWNLOAD_ATTEMPTS)
                         return false;
-                    }
+                    monitor.message("    Download interrupted, retrying (" + attempt + "/" + (DOWNLOAD_ATTEMPTS - 1) + ")");
+                }
+            }
+        } finally {
+            limit.release();
+            if (success && mirrors != null)
+                mirrors.success(mirror, target.length(), System.nanoTime() - start);
+            InstallMetrics.download(url, success ? target.length() : 0, System.nanoTime() - start, attempt, success);
+        }
+    }
+
+    private static String downloadFully(File target, String url) throws IOException {
+        Transport.Response response = getTransport().open("GET", url, Collections.emptyMap());
+        if (!checkResponse(response, url))
+            return null;
+        try (InputStream input = response.getInputStream()) {
+            return copyAndHash(input, target, HashFunction.SHA1, null);
+        }
+    }
+
+    /*
+     * Downloads into a .part file named after the expected sha1, so it can't be mistaken for a partial copy of a different file.
+     * If the transfer breaks and the server said it accepts ranges, the .part file is kept and the next attempt, in this run or a later one,
+     * asks only for the missing bytes. The data already on disk is hashed first so the final checksum still covers the whole file.
+     */
+    private static String downloadResumable(ProgressCallback monitor, Download download, File target, String url) throws IOException {
+        String expected = download.getSha1();
+        if (!target.getParentFile().exists())
+            target.getParentFile().mkdirs();
+
+        Path part = new File(target.getParentFile(), target.getName() + '.' + expected + ".part").toPath();
+        long offset = Files.isRegularFile(part) ? Files.size(part) : 0;
+        if (offset > 0 && download.getSize() > 0 && offset >= download.getSize()) {
+            Files.delete(part); // Complete or overlong, but it never validated, so start over.
+            offset = 0;
+        }
+
+        if (offset == 0 && MAX_SEGMENTS > 1 && download.getSize() >= SEGMENT_SIZE * 2L) {
+            String sha1 = downloadSegmented(monitor, download, target, url, part);
+            if (sha1 != null)
+                return sha1;
+        }
+
+        Transport.Response response = getTransport().open("GET", url, offset > 0 ? Collections.singletonMap("Range", "bytes=" + offset + "-") : Collections.emptyMap());
+        if (response.getCode() == 416) { // The server doesn't like our range, the remote file probably changed.
+            response.close();
+            Files.deleteIfExists(part);
+            throw new IOException("Server rejected resuming " + url + " at byte " + offset);
+        }
+        if (!checkResponse(response, url))
+            return null;
+        return receive(monitor, download, target, url, part, offset, response);
+    }
+
+    /*
+     * Writes the body of a response, which may be the rest of the file from offset or the whole file, into the .part file.
+     */
+    private static String receive(ProgressCallback monitor, Download download, File target, String url, Path part, long offset, Transport.Response response) throws IOException {
+        String expected = download.getSha1();
+        try (InputStream input = response.getInputStream()) {
+            boolean resumed = offset > 0 && response.getCode() == 206 && isRangeFrom(response.getHeader("Content-Range"), offset);
+            boolean keep = resumed || "bytes".equalsIgnoreCase(response.getHeader("Accept-Ranges"));
+            MessageDigest digest = HashFunction.SHA1.local();
+            if (resumed) {
+                monitor.message("    Resuming download at byte " + offset);
+                HashFunction.update(digest, part);
+            }
+
+            try (OutputStream out = resumed ? Files.newOutputStream(part, StandardOpenOption.APPEND) : Files.newOutputStream(part)) {
+                long length = getContentLength(response);
+                long received = 0;
+                byte[] buf = new byte[8192];
+                int count;
+                while ((count = input.read(buf)) != -1) {
+                    digest.update(buf, 0, count);
+                    out.write(buf, 0, count);
+                    received += count;
                 }
-                monitor.message("    Download completed: No checksum, Assuming valid.");
+                // URLConnection can report a dropped connection as a normal end of stream, so check we got everything we were promised.
+                if (received < length || (download.getSize() > 0 && (resumed ? offset : 0) + received < download.getSize()))
+                    throw new IOException("Connection closed early downloading " + url + ", received " + received + " bytes");
+            } catch (IOException e) {
+                if (!keep)
+                    Files.deleteIfExists(part);
+                throw e;
+            }
+
+            String sha1 = HashFunction.toHex(digest.digest());
+            if (expected.equalsIgnoreCase(sha1))
+                move(part, target.toPath());
+            else
+                Files.deleteIfExists(part);
+            return sha1;
+        }
+    }
+
+    /*
+     * Splits a large download into ranges fetched over several connections at once, written straight to their place in a preallocated file.
+     * One segment per SEGMENT_SIZE bytes, up to MAX_SEGMENTS, and never more than the per host limit has spare connections for.
+     * Returns null, without having written anything, if there's no spare connection or the probe failed, so the caller can use a single stream instead.
+     * A server that doesn't do ranges answers the probe with the whole file, which is then read as the single stream.
+     * If a segment fails, the data received from the start of the file up to the first gap is kept as the .part file, so the retry resumes
+     * from there with a single stream instead of starting over.
+     */
+    private static String downloadSegmented(ProgressCallback monitor, Download download, File target, String url, Path part) throws IOException {
+        long size = download.getSize();
+        int wanted = (int)Math.min(MAX_SEGMENTS, size / SEGMENT_SIZE);
+        Semaphore limit = getHostLimit(url);
+        int extra = 0;
+        while (extra < wanted - 1 && limit.tryAcquire()) // We already hold one permit for the first segment.
+            extra++;
+
+        ExecutorService pool = null;
+        Path temp = null;
+        try {
+            if (extra == 0)
+                return null;
+
+            int segments = extra + 1;
+            long chunk = (size + segments - 1) / segments;
+
+            // The first segment doubles as the probe, if the server ignores the range we stop here.
+            Transport.Response first = getTransport().open("GET", url, Collections.singletonMap("Range", "bytes=0-" + (chunk - 1)));
+            if (first.getCode() == 200) {
+                limit.release(extra);
+                extra = 0;
+                return receive(monitor, download, target, url, part, 0, first);
+            }
+            String range = first.getHeader("Content-Range");
+            if (first.getCode() != 206 || range == null || !range.startsWith("bytes 0-") || !range.endsWith("/" + size)) {
+                first.close();
+                return null;
+            }
+
+            monitor.message("    Downloading in " + segments + " segments");
+            temp = createTemp(target.getParentFile().toPath(), target.getName());
+            pool = Executors.newFixedThreadPool(extra, new NamedThreadFactory("Installer-Segment"));
+            AtomicLongArray written = new AtomicLongArray(segments);
+            try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+                file.setLength(size);
+                FileChannel channel = file.getChannel();
+
+                List<Future<Void>> futures = new ArrayList<>();
+                for (int x = 1; x < segments; x++) {
+                    int index = x;
+                    long start = x * chunk;
+                    long end = Math.min(size, start + chunk) - 1;
+                    futures.add(pool.submit(() -> {
+                        Transport.Response response = getTransport().open("GET", url, Collections.singletonMap("Range", "bytes=" + start + "-" + end));
+                        if (response.getCode() != 206 || !isRangeFrom(response.getHeader("Content-Range"), start)) {
+                            response.close();
+                            throw new IOException("Server stopped honoring ranges for " + url + ": HTTP " + response.getCode());
+                        }
+                        writeSegment(response, channel, start, end, written, index);
+                        return null;
+                    }));
+                }
+                writeSegment(first, channel, 0, chunk - 1, written, 0);
+
+                for (Future<Void> future : futures)
+                    future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                keepPrefix(temp, part, size, chunk, written);
+                temp = null;
+                throw new IOException("Interrupted downloading " + url, e);
+            } catch (ExecutionException | IOException e) {
+                keepPrefix(temp, part, size, chunk, written);
+                temp = null;
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+            }
+
+            String sha1 = HashFunction.SHA1.hash(temp);
+            if (download.getSha1().equalsIgnoreCase(sha1))
+                move(temp, target.toPath());
+            return sha1;
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+            if (temp != null)
+                Files.deleteIfExists(temp);
+            limit.release(extra);
+        }
+    }
+
+    /*
+     * Truncates a failed segmented download to the bytes received from the start without a gap, and keeps them as the .part file.
+     * The file has already been closed, so segments still running can't write to it any more.
+     */
+    private static void keepPrefix(Path temp, Path part, long size, long chunk, AtomicLongArray written) {
+        long prefix = 0;
+        for (int x = 0; x < written.length(); x++) {
+            long start = x * chunk;
+            prefix = start + written.get(x);
+            if (prefix < Math.min(size, start + chunk))
+                break;
+        }
+        try {
+            if (prefix > 0) {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    channel.truncate(prefix);
+                }
+                move(temp, part);
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            e.printStackTrace(); // We just start over.
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void writeSegment(Transport.Response response, FileChannel channel, long start, long end, AtomicLongArray written, int index) throws IOException {
+        try (InputStream input = response.getInputStream()) {
+            byte[] buf = new byte[8192];
+            long position = start;
+            int count;
+            while ((count = input.read(buf)) != -1) {
+                if (position + count > end + 1)
+                    throw new IOException("Server sent more than the requested range " + start + "-" + end);
+                ByteBuffer buffer = ByteBuffer.wrap(buf, 0, count);
+                while (buffer.hasRemaining())
+                    position += channel.write(buffer, position);
+                written.set(index, position - start);
+            }
+            if (position != end + 1)
+                throw new IOException("Connection closed early, segment " + start + "-" + end + " ended at " + position);
         }
+    }
+
+    private static long getContentLength(Transport.Response response) {
+        try {
+            String length = response.getHeader("Content-Length");
+            return length == null ? -1 : Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isRangeFrom(String contentRange, long offset) {
+        // bytes start-end/total
+        return contentRange != null && contentRange.startsWith("bytes " + offset + "-");
+    }
+
+    /**
+     * @return True if the response is a success. Server errors are thrown so the download is retried, anything else is logged and the response closed.
+     */
+    private static boolean checkResponse(Transport.Response response, String address) throws IOException {
+        int code = response.getCode();
+        if (code / 100 == 2)
+            return true;
+        response.close();
+        if (code / 100 == 5)
+            throw new IOException("Failed to download " + address + ": HTTP " + code);
+        System.out.println("Failed to download " + address + ": HTTP " + code);
         return false;
     }
 
+    private static Semaphore getHostLimit(String address) {
+        String host;
+        try {
+            host = new URL(address).getHost();
+        } catch (MalformedURLException e) {
+            host = "";
+        }
+        return HOST_LIMITS.computeIfAbsent(host, k -> new Semaphore(Math.max(1, MAX_HOST_CONNECTIONS)));
+    }
+
+    /**
+     * Streams the input into a temporary file next to the target, hashing it on the way through.
+     * The temporary file only replaces the target if the hash matches {@code expected}, or if there is nothing to check against,
+     * so an interrupted or corrupt download never ends up at the final path.
+     *
+     * @return The hash of the data that was read.
+     */
+    private static String copyAndHash(InputStream input, File target, HashFunction function, String expected) throws IOException {
+        if (!target.getParentFile().exists())
+            target.getParentFile().mkdirs();
+
+        Path temp = createTemp(target.getParentFile().toPath(), target.getName());
+        try {
+            MessageDigest digest = function.local();
+            Files.copy(new DigestInputStream(input, digest), temp, StandardCopyOption.REPLACE_EXISTING);
+            String hash = HashFunction.toHex(digest.digest());
+            if (expected == null || expected.equalsIgnoreCase(hash))
+                move(temp, target.toPath());
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * Files.createTempFile makes files only the owner can read, and moving one into place would keep that. These get the
+     * normal permissions for a new file instead, so libraries stay readable by whoever runs the game or server.
+     */
+    static Path createTemp(Path dir, String name) throws IOException {
+        while (true) {
+            try {
+                return Files.createFile(dir.resolve(name + '.' + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp"));
+            } catch (FileAlreadyExistsException e) {
+                // Try another name
+            }
+        }
+    }
+
+    static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     public static String getSha1(File target) {
         try {
-            return HashFunction.SHA1.hash(Files.readAllBytes(target.toPath())).toString();
+            long start = System.nanoTime();
+            String ret = HashFunction.SHA1.hash(target);
+            InstallMetrics.hashed(target.length(), start);
+            return ret;
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
 
-    private static boolean checksumValid(File target, String checksum) {
-        if (checksum == null || checksum.isEmpty())
-            return true;
-        String sha1 = getSha1(target);
-        return sha1 != null && sha1.equals(checksum);
+    public static synchronized Transport getTransport() {
+        if (transport == null) {
+            Transport legacy = new UrlConnectionTransport(CONNECT_TIMEOUT, READ_TIMEOUT);
+            transport = LEGACY_TRANSPORT ? null : HttpClientTransport.create(CONNECT_TIMEOUT, READ_TIMEOUT, legacy);
+            if (transport == null) {
+                // The JDK reads this once, size its keep-alive cache to match how many connections we allow per host.
+                if (System.getProperty("http.maxConnections") == null)
+                    System.setProperty("http.maxConnections", Integer.toString(Math.max(1, MAX_HOST_CONNECTIONS)));
+                transport = legacy;
+            }
+        }
+        return transport;
+    }
+
+    public static synchronized void setTransport(Transport value) {
+        transport = value;
     }
 
-    private static URLConnection getConnection(String address) {
+    private static Transport.Response getConnection(String address) {
         if (OFFLINE_MODE) {
             System.out.println("Offline Mode: Not downloading: " + address);
             return null;
         }
 
         try {
-            int MAX = 3;
-            URL url = new URL(address);
-            URLConnection connection = null;
-            for (int x = 0; x < MAX; x++) { //Maximum of 3 redirects.
-                connection = url.openConnection();
-                connection.setConnectTimeout(5000);
-                connection.setReadTimeout(5000);
-                if (connection instanceof HttpURLConnection) {
-                    HttpURLConnection hcon = (HttpURLConnection)connection;
-                    hcon.setInstanceFollowRedirects(false);
-                    int res = hcon.getResponseCode();
-                    if (res == HttpURLConnection.HTTP_MOVED_PERM || res == HttpURLConnection.HTTP_MOVED_TEMP) {
-                        String location = hcon.getHeaderField("Location");
-                        hcon.disconnect(); //Kill old connection.
-                        if (x == MAX-1) {
-                            System.out.println("Invalid number of redirects: " + location);
-                            return null;
-                        } else {
-                            System.out.println("Following redirect: " + location);
-                            url = new URL(url, location); // Nested in case of relative urls.
-                        }
-                    } else {
-                        break;
-                    }
-                } else {
-                    break;
-                }
-            }
-            return connection;
+            Transport.Response response = getTransport().open("GET", address, Collections.emptyMap());
+            return checkResponse(response, address) ? response : null;
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -227,18 +641,21 @@ public class DownloadUtils {
 
     public static boolean downloadFileEtag(File target, String url) {
         try {
-            URLConnection connection = getConnection(url);
-            String etag = connection.getHeaderField("ETag");
+            Transport.Response response = getConnection(url);
+            if (response == null)
+                return false;
+            String etag = response.getHeader("ETag");
             if (etag == null)
               etag = "-";
             else if ((etag.startsWith("\"")) && (etag.endsWith("\"")))
                 etag = etag.substring(1, etag.length() - 1);
 
-            Files.copy(connection.getInputStream(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            String md5;
+            try (InputStream input = response.getInputStream()) {
+                md5 = copyAndHash(input, target, HashFunction.MD5, null);
+            }
 
             if (etag.indexOf('-') != -1) return true; //No-etag, assume valid
-            byte[] fileData = Files.readAllBytes(target.toPath());
-            String md5 = HashFunction.MD5.hash(fileData).toString();
             System.out.println("  ETag: " + etag);
             System.out.println("  MD5:  " + md5);
             return etag.equalsIgnoreCase(md5);
@@ -250,9 +667,9 @@ public class DownloadUtils {
 
     public static Mirror[] downloadMirrors(String url) {
         try {
-            URLConnection connection = getConnection(url);
-            if (connection != null) {
-                try (InputStream stream = connection.getInputStream()) {
+            Transport.Response response = getConnection(url);
+            if (response != null) {
+                try (InputStream stream = response.getInputStream()) {
                     return Util.loadMirriorList(stream);
                 }
             }
@@ -264,9 +681,9 @@ public class DownloadUtils {
 
     public static Manifest downloadManifest() {
         try {
-            URLConnection connection = getConnection(MANIFEST_URL);
-            if (connection != null) {
-                try (InputStream stream = connection.getInputStream()) {
+            Transport.Response response = getConnection(MANIFEST_URL);
+            if (response != null) {
+                try (InputStream stream = response.getInputStream()) {
                     return Util.loadManifest(stream);
                 }
             }
@@ -276,11 +693,27 @@ public class DownloadUtils {
         return null;
     }
 
+    public static String getVersionUrl(String version) {
+        try {
+            Transport.Response response = getConnection(MANIFEST_URL);
+            if (response != null) {
+                try (InputStream stream = response.getInputStream()) {
+                    return Util.findVersionUrl(stream, version);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     public static boolean downloadFile(File target, String url) {
         try {
-            URLConnection connection = getConnection(url);
-            if (connection != null) {
-                Files.copy(connection.getInputStream(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Transport.Response response = getConnection(url);
+            if (response != null) {
+                try (InputStream input = response.getInputStream()) {
+                    copyAndHash(input, target, HashFunction.SHA1, null);
+                }
                 return true;
             }
         } catch (IOException e) {
@@ -290,19 +723,16 @@ public class DownloadUtils {
     }
 
     public static boolean extractFile(Artifact art, File target, String checksum) {
-        final InputStream input = DownloadUtils.class.getResourceAsStream("/maven/" + art.getPath());
-        if (input == null) {
-            System.out.println("File not found in installer archive: /maven/" + art.getPath());
-            return false;
-        }
-
-        if (!target.getParentFile().exists())
-            target.getParentFile().mkdirs();
-
+        if (checksum != null && checksum.isEmpty())
+            checksum = null;
         try {
-            Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            return checksumValid(target, checksum);
-        } catch (Exception e) {
+            String sha1 = JarExtractor.get().extract("maven/" + art.getPath(), target, checksum);
+            if (sha1 == null) {
+                System.out.println("File not found in installer archive: /maven/" + art.getPath());
+                return false;
+            }
+            return checksum == null || checksum.equals(sha1);
+        } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
@@ -310,19 +740,13 @@ public class DownloadUtils {
 
     public static boolean extractFile(String name, File target) {
         final String path = name.charAt(0) == '/' ? name : '/' + name;
-        final InputStream input = DownloadUtils.class.getResourceAsStream(path);
-        if (input == null) {
-            System.out.println("File not found in installer archive: " + path);
-            return false;
-        }
-
-        if (!target.getParentFile().exists())
-            target.getParentFile().mkdirs();
-
         try {
-            Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            return true; //checksumValid(target, checksum); //TODO: zip checksums?
-        } catch (Exception e) {
+            if (!JarExtractor.get().copy(path, target)) {
+                System.out.println("File not found in installer archive: " + path);
+                return false;
+            }
+            return true; //TODO: zip checksums?
+        } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
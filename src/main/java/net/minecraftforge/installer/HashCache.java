@@ -0,0 +1,183 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import net.minecraftforge.installer.json.Util;
+
+/**
+ * Remembers the sha1 of files under a libraries directory, along with the size, modification time and file key they had when hashed.
+ * As long as none of those change the stored hash is trusted, so re-running an install doesn't re-hash every jar on disk.
+ */
+public class HashCache {
+    public static final String FILE_NAME = ".installer_hashes.json";
+    private static final Type TYPE = new TypeToken<Map<String, Entry>>(){}.getType();
+    private static final Map<File, HashCache> CACHES = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+
+    public static HashCache get(File root) {
+        return CACHES.computeIfAbsent(root.getAbsoluteFile(), HashCache::new);
+    }
+
+    private HashCache(File root) {
+        this.root = root.toPath().toAbsolutePath().normalize();
+        this.file = this.root.resolve(FILE_NAME);
+        if (Files.isRegularFile(file)) {
+            try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+                Map<String, Entry> loaded = Util.GSON.fromJson(reader, TYPE);
+                if (loaded != null)
+                    loaded.forEach((k, v) -> { if (k != null && v != null && v.sha1 != null) entries.put(k, v); });
+            } catch (IOException | JsonParseException e) {
+                System.out.println("Ignoring invalid hash cache " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The sha1 of the file, from the cache if it is unchanged since it was last hashed, or null if it could not be read.
+     */
+    public String getSha1(File target) {
+        String key = getKey(target);
+        if (key == null)
+            return DownloadUtils.getSha1(target);
+
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(target.toPath(), BasicFileAttributes.class);
+            Entry entry = entries.get(key);
+            if (entry != null && entry.matches(attrs)) {
+                InstallMetrics.count("hashCache.hits");
+                return entry.sha1;
+            }
+
+            InstallMetrics.count("hashCache.misses");
+            long start = System.nanoTime();
+            String sha1 = HashFunction.SHA1.hash(target);
+            InstallMetrics.hashed(attrs.size(), start);
+            entries.put(key, new Entry(attrs, sha1));
+            dirty = true;
+            return sha1;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return The stored sha1 of the file if it hasn't changed since it was recorded, or null. Never reads the file.
+     */
+    public String getCached(File target) {
+        String key = getKey(target);
+        Entry entry = key == null ? null : entries.get(key);
+        if (entry == null)
+            return null;
+        try {
+            return entry.matches(Files.readAttributes(target.toPath(), BasicFileAttributes.class)) ? entry.sha1 : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records the hash of a file that was just written and verified, so the next run doesn't have to hash it again.
+     */
+    public void put(File target, String sha1) {
+        String key = getKey(target);
+        if (key == null || sha1 == null)
+            return;
+        try {
+            entries.put(key, new Entry(Files.readAttributes(target.toPath(), BasicFileAttributes.class), sha1));
+            dirty = true;
+        } catch (IOException e) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Writes the cache to disk if anything changed. The new contents are written to a temporary file and moved over the old one,
+     * so a crash mid-save never leaves a truncated cache behind.
+     */
+    public synchronized void save() {
+        if (!dirty)
+            return;
+        dirty = false;
+        try {
+            Files.createDirectories(root);
+            Path temp = DownloadUtils.createTemp(root, FILE_NAME);
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    Util.GSON.toJson(new TreeMap<>(entries), TYPE, writer);
+                }
+                DownloadUtils.move(temp, file);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            dirty = true;
+            e.printStackTrace();
+        }
+    }
+
+    private String getKey(File target) {
+        Path path = target.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(root))
+            return null;
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static class Entry {
+        private long size;
+        private long modified;
+        private String key;
+        private String sha1;
+
+        private Entry(BasicFileAttributes attrs, String sha1) {
+            this.size = attrs.size();
+            this.modified = attrs.lastModifiedTime().toMillis();
+            this.key = attrs.fileKey() == null ? null : attrs.fileKey().toString();
+            this.sha1 = sha1;
+        }
+
+        private boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() &&
+                modified == attrs.lastModifiedTime().toMillis() &&
+                Objects.equals(key, attrs.fileKey() == null ? null : attrs.fileKey().toString());
+        }
+    }
+}
@@ -19,11 +19,13 @@
 package net.minecraftforge.installer;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
@@ -34,12 +36,18 @@ public enum HashFunction {
     SHA1("SHA-1", 40),
     SHA256("SHA-256", 64);
 
-    private String algo;
-    private String pad;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // Files are read through one direct buffer per thread, so hashing a large jar never pulls the whole thing onto the heap.
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 18));
+
+    private final String algo;
+    private final String pad;
+    private final ThreadLocal<MessageDigest> local;
 
     private HashFunction(String algo, int length) {
         this.algo = algo;
         this.pad = String.format("%0" + length + "d", 0);
+        this.local = ThreadLocal.withInitial(this::get);
     }
 
     public String getExtension() {
@@ -54,27 +62,32 @@ public enum HashFunction {
         }
     }
 
+    /**
+     * Returns this thread's cached digest, reset and ready for use. Callers must finish with it before hashing anything else on the same thread.
+     */
+    MessageDigest local() {
+        MessageDigest digest = local.get();
+        digest.reset();
+        return digest;
+    }
+
     public String hash(File file) throws IOException {
-        try (FileInputStream fin = new FileInputStream(file)) {
-            return hash(fin);
-        }
+        return hash(file.toPath());
     }
 
-    public String hash(Iterable<File> files) throws IOException {
-        MessageDigest hash = get();
-        byte[] buf = new byte[1024];
+    public String hash(Path path) throws IOException {
+        MessageDigest hash = local();
+        update(hash, path);
+        return toHex(hash.digest());
+    }
 
+    public String hash(Iterable<File> files) throws IOException {
+        MessageDigest hash = local();
         for (File file : files) {
-            if (!file.exists())
-                continue;
-
-            try (FileInputStream fin = new FileInputStream(file)) {
-                int count = -1;
-                while ((count = fin.read(buf)) != -1)
-                    hash.update(buf, 0, count);
-            }
+            if (file.exists())
+                update(hash, file.toPath());
         }
-        return pad(new BigInteger(1, hash.digest()).toString(16));
+        return toHex(hash.digest());
     }
 
     public String hash(String data) {
@@ -82,19 +95,48 @@ public enum HashFunction {
     }
 
     public String hash(InputStream stream) throws IOException {
-        MessageDigest hash = get();
-        byte[] buf = new byte[1024];
+        MessageDigest hash = local();
+        byte[] buf = new byte[8192];
         int count = -1;
         while ((count = stream.read(buf)) != -1)
             hash.update(buf, 0, count);
-        return pad(new BigInteger(1, hash.digest()).toString(16));
+        return toHex(hash.digest());
     }
 
     public String hash(byte[] data) {
-        return pad(new BigInteger(1, get().digest(data)).toString(16));
+        return toHex(local().digest(data));
+    }
+
+    static void update(MessageDigest hash, Path path) throws IOException {
+        ByteBuffer buf = buffer();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                hash.update(buf);
+                buf.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns this thread's direct read buffer, cleared. Same rule as {@link #local()}, don't hold on to it across other hashing calls.
+     */
+    static ByteBuffer buffer() {
+        ByteBuffer buf = BUFFER.get();
+        buf.clear();
+        return buf;
     }
 
     public String pad(String hash) {
         return (pad + hash).substring(hash.length());
     }
+
+    public static String toHex(byte[] digest) {
+        char[] ret = new char[digest.length * 2];
+        for (int x = 0; x < digest.length; x++) {
+            ret[x * 2]     = HEX[(digest[x] >> 4) & 0xF];
+            ret[x * 2 + 1] = HEX[digest[x] & 0xF];
+        }
+        return new String(ret);
+    }
 }
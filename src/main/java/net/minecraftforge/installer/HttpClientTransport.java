@@ -0,0 +1,299 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport backed by java.net.http.HttpClient, which pools connections and multiplexes requests over HTTP/2 when the server supports it.
+ * The installer targets Java 8, so the client is driven reflectively, done this way to prevent a hard dep on Java 11, like the platform classloader lookup.
+ * Anything that isn't http(s) goes to the fallback transport.
+ *
+ * The client's request timeout only covers the wait for the response headers. Reads of the body are guarded separately, a body that
+ * makes no progress for the read timeout is closed and the read fails with a SocketTimeoutException, like URLConnection's would.
+ */
+public class HttpClientTransport implements Transport {
+    private static boolean checked = false;
+    private static Method clientNewBuilder, builderConnectTimeout, builderFollowRedirects, builderVersion, builderBuild;
+    private static Method requestNewBuilder, requestTimeout, requestHeader, requestMethod, requestBuild, noBody, ofInputStream, send;
+    private static Method statusCode, headers, firstValue, body, uri;
+    private static Object redirectNormal, http2;
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Installer-ReadTimeout"));
+
+    private final Object client;
+    private final Duration timeout;
+    private final Transport fallback;
+
+    /**
+     * @return A new transport, or null if this JVM doesn't have java.net.http.
+     */
+    public static HttpClientTransport create(int connectTimeout, int readTimeout, Transport fallback) {
+        if (!init())
+            return null;
+        try {
+            Object builder = clientNewBuilder.invoke(null);
+            builderConnectTimeout.invoke(builder, Duration.ofMillis(connectTimeout));
+            builderFollowRedirects.invoke(builder, redirectNormal);
+            builderVersion.invoke(builder, http2);
+            return new HttpClientTransport(builderBuild.invoke(builder), Duration.ofMillis(readTimeout), fallback);
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private HttpClientTransport(Object client, Duration timeout, Transport fallback) {
+        this.client = client;
+        this.timeout = timeout;
+        this.fallback = fallback;
+    }
+
+    private static synchronized boolean init() {
+        if (!checked) {
+            checked = true;
+            try {
+                Class<?> client = Class.forName("java.net.http.HttpClient");
+                Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+                Class<?> redirect = Class.forName("java.net.http.HttpClient$Redirect");
+                Class<?> version = Class.forName("java.net.http.HttpClient$Version");
+                Class<?> request = Class.forName("java.net.http.HttpRequest");
+                Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+                Class<?> publisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+                Class<?> publishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+                Class<?> handler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+                Class<?> handlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+                Class<?> response = Class.forName("java.net.http.HttpResponse");
+                Class<?> httpHeaders = Class.forName("java.net.http.HttpHeaders");
+
+                clientNewBuilder = client.getMethod("newBuilder");
+                builderConnectTimeout = clientBuilder.getMethod("connectTimeout", Duration.class);
+                builderFollowRedirects = clientBuilder.getMethod("followRedirects", redirect);
+                builderVersion = clientBuilder.getMethod("version", version);
+                builderBuild = clientBuilder.getMethod("build");
+                requestNewBuilder = request.getMethod("newBuilder", URI.class);
+                requestTimeout = requestBuilder.getMethod("timeout", Duration.class);
+                requestHeader = requestBuilder.getMethod("header", String.class, String.class);
+                requestMethod = requestBuilder.getMethod("method", String.class, publisher);
+                requestBuild = requestBuilder.getMethod("build");
+                noBody = publishers.getMethod("noBody");
+                ofInputStream = handlers.getMethod("ofInputStream");
+                send = client.getMethod("send", request, handler);
+                statusCode = response.getMethod("statusCode");
+                headers = response.getMethod("headers");
+                firstValue = httpHeaders.getMethod("firstValue", String.class);
+                body = response.getMethod("body");
+                uri = response.getMethod("uri");
+                redirectNormal = enumValue(redirect, "NORMAL");
+                http2 = enumValue(version, "HTTP_2");
+            } catch (ReflectiveOperationException e) {
+                clientNewBuilder = null; // Java 8, or the java.net.http module isn't available.
+            }
+        }
+        return clientNewBuilder != null;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object enumValue(Class<?> cls, String name) {
+        return Enum.valueOf((Class<Enum>)cls, name);
+    }
+
+    @Override
+    public Transport.Response open(String method, String url, Map<String, String> headers) throws IOException {
+        URI target;
+        try {
+            target = new URI(url);
+        } catch (Exception e) {
+            throw new IOException("Invalid url: " + url, e);
+        }
+        if (!"http".equalsIgnoreCase(target.getScheme()) && !"https".equalsIgnoreCase(target.getScheme()))
+            return fallback.open(method, url, headers);
+
+        try {
+            Object builder = requestNewBuilder.invoke(null, target);
+            requestTimeout.invoke(builder, timeout);
+            for (Map.Entry<String, String> e : headers.entrySet())
+                requestHeader.invoke(builder, e.getKey(), e.getValue());
+            requestMethod.invoke(builder, method, noBody.invoke(null));
+            Object response = send.invoke(client, requestBuild.invoke(builder), ofInputStream.invoke(null));
+            return new Response(response, timeout.toNanos());
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while requesting " + url, cause);
+            }
+            throw new IOException(cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static class Response implements Transport.Response {
+        private final Object response;
+        private final TimeoutInputStream stream;
+
+        private Response(Object response, long timeout) {
+            this.response = response;
+            this.stream = new TimeoutInputStream((InputStream)call(body), timeout);
+        }
+
+        private Object call(Method method, Object... args) {
+            try {
+                return method.invoke(response, args);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e); //Never happens, the methods are all public API
+            }
+        }
+
+        @Override
+        public int getCode() {
+            return (Integer)call(statusCode);
+        }
+
+        @Override
+        public String getUrl() {
+            return call(uri).toString();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            try {
+                return ((Optional<?>)firstValue.invoke(headers.invoke(response), name)).map(Object::toString).orElse(null);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+
+    /*
+     * Checks a few times per timeout whether a read has been waiting too long, and closes the body if so, which wakes the reader up.
+     */
+    private static class TimeoutInputStream extends FilterInputStream {
+        private final long timeout;
+        private final ScheduledFuture<?> check;
+        private long started = 0; // When the read in progress started, 0 if there is none.
+        private volatile boolean timedOut = false;
+
+        private TimeoutInputStream(InputStream in, long timeout) {
+            super(in);
+            this.timeout = timeout;
+            long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), timeout / 4);
+            this.check = WATCHDOG.scheduleAtFixedRate(this::check, period, period, TimeUnit.NANOSECONDS);
+        }
+
+        private void check() {
+            synchronized (this) {
+                if (started == 0 || System.nanoTime() - started < timeout)
+                    return;
+                timedOut = true;
+            }
+            check.cancel(false);
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Closing is all we wanted, the reader gets the timeout either way.
+            }
+        }
+
+        private synchronized void begin() throws IOException {
+            if (timedOut)
+                throw new SocketTimeoutException("Read timed out");
+            started = System.nanoTime();
+        }
+
+        private synchronized void end() {
+            started = 0;
+        }
+
+        private IOException fail(IOException e) {
+            if (!timedOut)
+                return e;
+            SocketTimeoutException ret = new SocketTimeoutException("Read timed out");
+            ret.initCause(e);
+            return ret;
+        }
+
+        @Override
+        public int read() throws IOException {
+            begin();
+            try {
+                return in.read();
+            } catch (IOException e) {
+                throw fail(e);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            begin();
+            try {
+                return in.read(b, off, len);
+            } catch (IOException e) {
+                throw fail(e);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            begin();
+            try {
+                return in.skip(n);
+            } catch (IOException e) {
+                throw fail(e);
+            } finally {
+                end();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            check.cancel(false);
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.minecraftforge.installer.json.Util;
+
+/**
+ * Counters and timings for one installer run, written out as a json report at the end so installs can be compared between versions.
+ * Everything here is cheap enough to record unconditionally, and safe to call from any thread.
+ *
+ * Counters ending in ".nanos" are time spent, the matching ".bytes" counters are used to work out throughput in the report.
+ * Time is summed over every thread, so with parallel downloads the throughput is per connection, not for the whole install.
+ */
+public class InstallMetrics {
+    private static final long START = System.nanoTime();
+    private static final Map<String, Object> INFO = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> PHASES = new ConcurrentHashMap<>();
+    private static final List<Map<String, Object>> DOWNLOADS = new ArrayList<>();
+    private static final List<Map<String, Object>> PROCESSORS = new ArrayList<>();
+
+    public static void info(String key, Object value) {
+        if (value != null)
+            INFO.put(key, value);
+    }
+
+    public static void count(String name) {
+        count(name, 1);
+    }
+
+    public static void count(String name, long amount) {
+        COUNTERS.computeIfAbsent(name, k -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Adds the time since start, a {@link System#nanoTime()} value, to a named phase. Phases that overlap, or run more than once, add up.
+     */
+    public static void phase(String name, long start) {
+        PHASES.computeIfAbsent(name, k -> new LongAdder()).add(System.nanoTime() - start);
+    }
+
+    public static void hashed(long bytes, long start) {
+        count("hash.files");
+        count("hash.bytes", bytes);
+        count("hash.nanos", System.nanoTime() - start);
+    }
+
+    public static void extracted(long bytes, long start) {
+        count("extract.files");
+        count("extract.bytes", bytes);
+        count("extract.nanos", System.nanoTime() - start);
+    }
+
+    public static void download(String url, long bytes, long nanos, int attempts, boolean success) {
+        count("download.files");
+        count(success ? "download.success" : "download.failures");
+        count("download.retries", Math.max(0, attempts - 1));
+        if (success) {
+            count("download.bytes", bytes);
+            count("download.nanos", nanos);
+        }
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("url", url);
+        entry.put("bytes", bytes);
+        entry.put("ms", nanos / 1000000);
+        entry.put("attempts", attempts);
+        entry.put("success", success);
+        synchronized (DOWNLOADS) {
+            DOWNLOADS.add(entry);
+        }
+    }
+
+    public static void processor(String name, long nanos, String result) {
+        count("processor." + result);
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("name", name);
+        entry.put("ms", nanos / 1000000);
+        entry.put("result", result);
+        synchronized (PROCESSORS) {
+            PROCESSORS.add(entry);
+        }
+    }
+
+    public static void write(File file) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.putAll(new TreeMap<>(INFO));
+        report.put("totalMs", (System.nanoTime() - START) / 1000000);
+
+        Map<String, Long> phases = new TreeMap<>();
+        PHASES.forEach((k, v) -> phases.put(k, v.sum() / 1000000));
+        report.put("phasesMs", phases);
+
+        Map<String, Long> counters = new TreeMap<>();
+        COUNTERS.forEach((k, v) -> counters.put(k, v.sum()));
+        report.put("counters", counters);
+
+        Map<String, Long> throughput = new TreeMap<>();
+        counters.forEach((k, v) -> {
+            if (k.endsWith(".bytes")) {
+                String base = k.substring(0, k.length() - 6);
+                Long nanos = counters.get(base + ".nanos");
+                if (nanos != null && nanos > 0)
+                    throughput.put(base + ".bytesPerSecond", (long)(v * 1e9 / nanos));
+            }
+        });
+        report.put("throughput", throughput);
+
+        synchronized (DOWNLOADS) {
+            report.put("downloads", new ArrayList<>(DOWNLOADS));
+        }
+        synchronized (PROCESSORS) {
+            report.put("processors", new ArrayList<>(PROCESSORS));
+        }
+
+        try {
+            Path path = file.toPath().toAbsolutePath();
+            Path temp = DownloadUtils.createTemp(path.getParent(), path.getFileName().toString());
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    Util.GSON.toJson(report, writer);
+                }
+                DownloadUtils.move(temp, path);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -73,6 +73,9 @@ public class InstallerPanel{
         };
         
         Action action = actionToAct;
+        InstallMetrics.info("version", profile.getVersion());
+        InstallMetrics.info("action", action.getClass().getSimpleName());
+        boolean success = false;
         try {
         	if(prog != null)
         	{
@@ -80,6 +83,7 @@ public class InstallerPanel{
                 prog.toFront();
         	}
             if (action.run(targetDir, optPred)) {
+                success = true;
             	if(prog != null)
             	{
                     prog.start("Finished!");
@@ -94,6 +98,7 @@ public class InstallerPanel{
         }
         finally
         {
+            InstallMetrics.info("success", success);
         	if(prog != null)
         		prog.dispose();
             SimpleInstaller.hookStdOut(monitor);
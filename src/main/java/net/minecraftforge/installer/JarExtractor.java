@@ -0,0 +1,418 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Extracts files embedded in the installer jar without going through the classloader.
+ *
+ * The jar is opened once and its central directory read into a name index. Stored entries are copied straight from the jar's
+ * FileChannel, with {@link FileChannel#transferTo} when no hash is needed, and deflated ones are inflated and hashed in the same pass,
+ * so nothing has to be read back from disk to verify it. Lookups and extraction are thread safe, entries may be extracted in parallel.
+ * An interrupt during a read closes the channel for every thread, so it is opened again and the other readers retry.
+ *
+ * When the installer isn't running from a plain jar, or the jar is something we can't index, it falls back to classloader resources.
+ */
+public class JarExtractor {
+    private static final int EOCD = 0x06054b50;
+    private static final int CEN = 0x02014b50;
+    private static final int LOC = 0x04034b50;
+    private static JarExtractor instance;
+
+    private final File jar;
+    private volatile FileChannel channel;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public static synchronized JarExtractor get() {
+        if (instance == null)
+            instance = new JarExtractor(locate());
+        return instance;
+    }
+
+    JarExtractor(File jar) {
+        FileChannel channel = null;
+        if (jar != null) {
+            try {
+                channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ);
+                index(channel);
+            } catch (IOException e) {
+                System.out.println("Could not index installer jar " + jar + ", using classloader resources: " + e.getMessage());
+                entries.clear();
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ex) {}
+                }
+                channel = null;
+            }
+        }
+        this.jar = channel == null ? null : jar;
+        this.channel = channel;
+    }
+
+    private static File locate() {
+        try {
+            URL url = JarExtractor.class.getProtectionDomain().getCodeSource().getLocation();
+            File file = new File(url.toURI());
+            return file.isFile() ? file : null;
+        } catch (URISyntaxException | IllegalArgumentException | SecurityException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    public boolean has(String name) {
+        name = normalize(name);
+        if (channel != null)
+            return entries.containsKey(name);
+        return JarExtractor.class.getResource('/' + name) != null;
+    }
+
+    /**
+     * @return A key that changes whenever the content of the entry does, built from its crc and size, or null if the jar isn't indexed.
+     */
+    public String getContentKey(String name) {
+        Entry entry = channel == null ? null : entries.get(normalize(name));
+        return entry == null ? null : String.format("%08x-%x", entry.crc, entry.size);
+    }
+
+    /**
+     * Extracts an entry and hashes it with sha1 on the way. The target is only replaced if the hash matches expected, or expected is null.
+     * @return The sha1 of the entry, or null if there is no such entry.
+     */
+    public String extract(String name, File target, String expected) throws IOException {
+        long start = System.nanoTime();
+        String hash;
+        while (true) {
+            FileChannel channel = this.channel;
+            try {
+                hash = extractHashed(channel, normalize(name), target, expected);
+                break;
+            } catch (ClosedChannelException e) {
+                if (!reopen(channel, e))
+                    throw e;
+            }
+        }
+        if (hash != null && (expected == null || expected.equalsIgnoreCase(hash)))
+            InstallMetrics.extracted(target.length(), start);
+        return hash;
+    }
+
+    private String extractHashed(FileChannel channel, String name, File target, String expected) throws IOException {
+        Entry entry = channel == null ? null : entries.get(name);
+        if (entry == null || entry.method != ZipEntry.STORED) {
+            try (InputStream input = open(channel, name, entry)) {
+                return input == null ? null : copy(input, target, expected, true);
+            }
+        }
+
+        Path temp = createTemp(target);
+        try {
+            MessageDigest digest = HashFunction.SHA1.local();
+            ByteBuffer buf = HashFunction.buffer();
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long pos = entry.getDataOffset(channel);
+                long end = pos + entry.size;
+                while (pos < end) {
+                    buf.clear();
+                    if (end - pos < buf.capacity())
+                        buf.limit((int)(end - pos));
+                    int read = channel.read(buf, pos);
+                    if (read < 0)
+                        throw new EOFException("Installer jar truncated in " + name);
+                    pos += read;
+                    buf.flip();
+                    digest.update(buf);
+                    buf.rewind();
+                    while (buf.hasRemaining())
+                        out.write(buf);
+                }
+            }
+            String hash = HashFunction.toHex(digest.digest());
+            if (expected == null || expected.equalsIgnoreCase(hash))
+                DownloadUtils.move(temp, target.toPath());
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Extracts an entry without hashing it.
+     * @return False if there is no such entry.
+     */
+    public boolean copy(String name, File target) throws IOException {
+        long start = System.nanoTime();
+        boolean ret;
+        while (true) {
+            FileChannel channel = this.channel;
+            try {
+                ret = copyEntry(channel, normalize(name), target);
+                break;
+            } catch (ClosedChannelException e) {
+                if (!reopen(channel, e))
+                    throw e;
+            }
+        }
+        if (ret)
+            InstallMetrics.extracted(target.length(), start);
+        return ret;
+    }
+
+    private boolean copyEntry(FileChannel channel, String name, File target) throws IOException {
+        Entry entry = channel == null ? null : entries.get(name);
+        if (entry == null || entry.method != ZipEntry.STORED) {
+            try (InputStream input = open(channel, name, entry)) {
+                if (input == null)
+                    return false;
+                copy(input, target, null, false);
+                return true;
+            }
+        }
+
+        Path temp = createTemp(target);
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long pos = entry.getDataOffset(channel);
+                long end = pos + entry.size;
+                while (pos < end) {
+                    long sent = channel.transferTo(pos, end - pos, out);
+                    if (sent <= 0 && pos >= channel.size())
+                        throw new EOFException("Installer jar truncated in " + name);
+                    pos += sent;
+                }
+            }
+            DownloadUtils.move(temp, target.toPath());
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * Only the first thread to notice opens the jar again, the rest pick up the new channel. The interrupted thread still
+     * gets its exception, anyone whose read was cut short by someone else's interrupt tries again.
+     */
+    private synchronized boolean reopen(FileChannel stale, ClosedChannelException e) throws IOException {
+        if (channel == stale)
+            channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ);
+        return !(e instanceof ClosedByInterruptException) && !Thread.currentThread().isInterrupted();
+    }
+
+    private InputStream open(FileChannel channel, String name, Entry entry) throws IOException {
+        if (entry == null)
+            return channel == null ? JarExtractor.class.getResourceAsStream('/' + name) : null;
+        if (entry.method != ZipEntry.DEFLATED)
+            throw new IOException("Unsupported compression method " + entry.method + " for " + name);
+
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(new ChannelInputStream(channel, entry.getDataOffset(channel), entry.compressed), inflater, 1 << 16) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inflater.end();
+            }
+        };
+    }
+
+    private static String copy(InputStream input, File target, String expected, boolean hash) throws IOException {
+        Path temp = createTemp(target);
+        try {
+            MessageDigest digest = hash ? HashFunction.SHA1.local() : null;
+            byte[] buf = new byte[1 << 16];
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = input.read(buf)) != -1) {
+                    if (digest != null)
+                        digest.update(buf, 0, read);
+                    ByteBuffer wrap = ByteBuffer.wrap(buf, 0, read);
+                    while (wrap.hasRemaining())
+                        out.write(wrap);
+                }
+            }
+            String ret = digest == null ? null : HashFunction.toHex(digest.digest());
+            if (expected == null || expected.equalsIgnoreCase(ret))
+                DownloadUtils.move(temp, target.toPath());
+            return ret;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Path createTemp(File target) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (!parent.exists())
+            parent.mkdirs();
+        return DownloadUtils.createTemp(parent.toPath(), target.getName());
+    }
+
+    private static String normalize(String name) {
+        return name.charAt(0) == '/' ? name.substring(1) : name;
+    }
+
+    /*
+     * Reads the central directory at the end of the jar. Zip64 archives are left to the classloader, an installer is never that big.
+     */
+    private void index(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int tailSize = (int)Math.min(size, 0xFFFF + 22);
+        ByteBuffer tail = read(channel, size - tailSize, tailSize);
+        int eocd = -1;
+        for (int x = tailSize - 22; x >= 0; x--) {
+            if (tail.getInt(x) == EOCD) {
+                eocd = x;
+                break;
+            }
+        }
+        if (eocd == -1)
+            throw new IOException("No end of central directory");
+
+        int count = tail.getShort(eocd + 10) & 0xFFFF;
+        long cenSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cenOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL)
+            throw new IOException("Zip64 archives are not supported");
+        // Anything prepended to the jar, like a launcher stub, shifts every offset by the same amount.
+        long shift = (size - tailSize + eocd) - (cenOffset + cenSize);
+
+        ByteBuffer cen = read(channel, cenOffset + shift, (int)cenSize);
+        int pos = 0;
+        for (int x = 0; x < count; x++) {
+            if (cen.getInt(pos) != CEN)
+                throw new IOException("Invalid central directory entry at " + (cenOffset + pos));
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long crc = cen.getInt(pos + 16) & 0xFFFFFFFFL;
+            long compressed = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            long uncompressed = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLen = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLen = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLen = cen.getShort(pos + 32) & 0xFFFF;
+            long local = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (compressed == 0xFFFFFFFFL || uncompressed == 0xFFFFFFFFL || local == 0xFFFFFFFFL)
+                throw new IOException("Zip64 archives are not supported");
+
+            byte[] name = new byte[nameLen];
+            cen.position(pos + 46);
+            cen.get(name);
+            String entryName = new String(name, StandardCharsets.UTF_8);
+            if (!entryName.endsWith("/"))
+                entries.put(entryName, new Entry(method, crc, compressed, uncompressed, local + shift));
+            pos += 46 + nameLen + extraLen + commentLen;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0)
+                throw new EOFException();
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static class Entry {
+        private final int method;
+        private final long crc;
+        private final long compressed;
+        private final long size;
+        private final long local;
+        private volatile long data = -1;
+
+        private Entry(int method, long crc, long compressed, long size, long local) {
+            this.method = method;
+            this.crc = crc;
+            this.compressed = compressed;
+            this.size = size;
+            this.local = local;
+        }
+
+        // The local header's extra field can differ from the central one, so it has to be read to find where the data starts.
+        private long getDataOffset(FileChannel channel) throws IOException {
+            if (data == -1) {
+                ByteBuffer header = read(channel, local, 30);
+                if (header.getInt(0) != LOC)
+                    throw new IOException("Invalid local header at " + local);
+                data = local + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            }
+            return data;
+        }
+    }
+
+    /*
+     * Positional reads over part of the jar, so any number of these can share the one channel. The Inflater wants one byte
+     * past the end of the deflated data when it runs without zlib headers, so a single zero is returned before EOF.
+     */
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long pos;
+        private boolean padded = false;
+
+        private ChannelInputStream(FileChannel channel, long start, long length) {
+            this.channel = channel;
+            this.pos = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (pos >= end) {
+                if (padded)
+                    return -1;
+                padded = true;
+                b[off] = 0;
+                return 1;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, (int)Math.min(len, end - pos)), pos);
+            if (read < 0)
+                throw new EOFException();
+            pos += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraftforge.installer.actions.ProgressCallback;
+
+/**
+ * Turns bytes written to System.out and System.err back into lines for a ProgressCallback.
+ *
+ * Every thread gets its own reusable line buffer, so output from processors running side by side never mixes inside a line, and a line
+ * is only decoded once it is complete, so multi-byte characters can't be cut in half. Lines are tagged with the source set on the
+ * writing thread by {@link #setSource(String)}, if any. Lines still missing their newline are passed on by {@link #emitPending()}, which
+ * should be called before the stream is swapped out.
+ */
+public class LineCaptureStream extends OutputStream {
+    private static final ThreadLocal<String> SOURCE = new ThreadLocal<>();
+    // Longest line we hold on to before passing it on anyway, in case something prints without ever writing a newline.
+    private static final int MAX_LINE = 1 << 16;
+
+    private final ProgressCallback monitor;
+    private final Charset charset;
+    private final Set<Buffer> all = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(() -> {
+        Buffer buf = new Buffer();
+        all.add(buf);
+        return buf;
+    });
+
+    public LineCaptureStream(ProgressCallback monitor, Charset charset) {
+        this.monitor = monitor;
+        this.charset = charset;
+    }
+
+    /**
+     * Tags everything the current thread prints from now on.
+     * @return The previous source, to restore once done.
+     */
+    public static String setSource(String source) {
+        String old = SOURCE.get();
+        if (source == null)
+            SOURCE.remove();
+        else
+            SOURCE.set(source);
+        return old;
+    }
+
+    public static String getSource() {
+        return SOURCE.get();
+    }
+
+    public static String format(String source, String line) {
+        return source == null ? line : '[' + source + "] " + line;
+    }
+
+    @Override
+    public void write(int b) {
+        Buffer buf = buffers.get();
+        synchronized (buf) {
+            buf.source = SOURCE.get();
+            if (b == '\n')
+                emit(buf);
+            else
+                buf.append((byte)b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        Buffer buf = buffers.get();
+        synchronized (buf) {
+            buf.source = SOURCE.get();
+            writeLines(buf, b, off, len);
+        }
+    }
+
+    private void writeLines(Buffer buf, byte[] b, int off, int len) {
+        int end = off + len;
+        int start = off;
+        for (int x = off; x < end; x++) {
+            if (b[x] == '\n') {
+                buf.append(b, start, x - start);
+                emit(buf);
+                start = x + 1;
+            }
+        }
+        buf.append(b, start, end - start);
+    }
+
+    /**
+     * Partial lines are kept until their newline arrives, PrintStream flushes after every print and would otherwise split them.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        emitPending();
+    }
+
+    /**
+     * Passes on the unfinished line of every thread that wrote to this stream, like the last print of a processor that has since exited.
+     */
+    public void emitPending() {
+        for (Buffer buf : all) {
+            synchronized (buf) {
+                emit(buf);
+            }
+        }
+    }
+
+    private void emit(Buffer buf) {
+        int len = buf.length;
+        if (len > 0 && buf.data[len - 1] == '\r')
+            len--;
+        buf.length = 0;
+        if (len == 0)
+            return;
+        monitor.message(format(buf.source, new String(buf.data, 0, len, charset)));
+    }
+
+    private class Buffer {
+        private byte[] data = new byte[256];
+        private int length = 0;
+        // Source of the thread that owns this buffer, as of its last write, so lines passed on by other threads keep their tag.
+        private String source;
+
+        private void append(byte b) {
+            if (length == data.length)
+                grow(length + 1);
+            data[length++] = b;
+        }
+
+        private void append(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (length + len > data.length)
+                    grow(length + len);
+                int count = Math.min(len, data.length - length);
+                System.arraycopy(b, off, data, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        private void grow(int needed) {
+            if (data.length < MAX_LINE)
+                data = Arrays.copyOf(data, Math.min(MAX_LINE, Math.max(needed, data.length * 2)));
+            else
+                emit(this);
+        }
+    }
+}
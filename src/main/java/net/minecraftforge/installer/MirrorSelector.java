@@ -0,0 +1,237 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import net.minecraftforge.installer.json.Mirror;
+import net.minecraftforge.installer.json.Util;
+
+/**
+ * Ranks the mirrors from an install profile by how fast they answered us, both in a quick probe at startup and in the downloads of
+ * previous runs, which are kept in {@link #STATS_FILE}. Mirrors that fail during the install are pushed to the back of the list so
+ * every later download starts at the next best one.
+ */
+public class MirrorSelector {
+    public static File STATS_FILE = new File(System.getProperty("user.home"), ".forge_installer" + File.separator + "mirrors.json");
+    // Only downloads at least this big say anything useful about throughput, smaller ones are dominated by latency.
+    private static final long MIN_SAMPLE = 64 * 1024;
+    // Weight of a new sample in the running averages.
+    private static final double WEIGHT = 0.3;
+    private static final Type TYPE = new TypeToken<Map<String, Stats>>(){}.getType();
+
+    private final List<Mirror> ranked;
+    private final Set<Mirror> failed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+
+    /**
+     * Probes every mirror at once with a HEAD request for {@code path}, then ranks them. Any HTTP answer counts as a response,
+     * so the path only needs to be something the mirrors are likely to have.
+     */
+    public MirrorSelector(Mirror[] mirrors, String path) {
+        load();
+        List<Mirror> list = new ArrayList<>();
+        for (Mirror mirror : mirrors) {
+            if (mirror != null && mirror.getUrl() != null)
+                list.add(mirror);
+        }
+
+        if (!DownloadUtils.OFFLINE_MODE && !list.isEmpty()) {
+            ExecutorService pool = Executors.newFixedThreadPool(list.size(), new NamedThreadFactory("Installer-Mirror-Probe"));
+            try {
+                for (Mirror mirror : list)
+                    pool.submit(() -> probe(mirror, path == null ? "" : path));
+                pool.shutdown();
+                pool.awaitTermination(DownloadUtils.CONNECT_TIMEOUT + DownloadUtils.READ_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        double throughput = averageThroughput();
+        list.sort(Comparator.comparingDouble(m -> score(m, throughput)));
+        this.ranked = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return The best mirror that hasn't failed during this run, or null if there are none left.
+     */
+    public Mirror getMirror() {
+        for (Mirror mirror : ranked) {
+            if (!failed.contains(mirror))
+                return mirror;
+        }
+        return null;
+    }
+
+    /**
+     * @return All mirrors in the order they should be tried, the ones that failed during this run last.
+     */
+    public List<Mirror> getMirrors() {
+        List<Mirror> ret = new ArrayList<>(ranked.size());
+        for (Mirror mirror : ranked) {
+            if (!failed.contains(mirror))
+                ret.add(mirror);
+        }
+        for (Mirror mirror : ranked) {
+            if (failed.contains(mirror))
+                ret.add(mirror);
+        }
+        return ret;
+    }
+
+    public void success(Mirror mirror, long bytes, long nanos) {
+        failed.remove(mirror);
+        Stats stat = getStats(mirror);
+        synchronized (stat) {
+            stat.failures = 0;
+            if (bytes >= MIN_SAMPLE && nanos > 0)
+                stat.throughput = average(stat.throughput, bytes * 1e9 / nanos);
+        }
+        dirty = true;
+    }
+
+    public void failure(Mirror mirror) {
+        failed.add(mirror);
+        Stats stat = getStats(mirror);
+        synchronized (stat) {
+            stat.failures++;
+        }
+        dirty = true;
+    }
+
+    private void probe(Mirror mirror, String path) {
+        Transport transport = DownloadUtils.getTransport();
+        long start = System.nanoTime();
+        try (Transport.Response response = transport.open("HEAD", mirror.getUrl() + path, Collections.emptyMap())) {
+            response.getCode();
+            Stats stat = getStats(mirror);
+            synchronized (stat) {
+                stat.latency = average(stat.latency, (System.nanoTime() - start) / 1e6);
+            }
+        } catch (IOException e) {
+            System.out.println("Mirror " + mirror.getUrl() + " did not respond: " + e);
+            failure(mirror);
+        }
+        dirty = true;
+    }
+
+    /*
+     * Estimated milliseconds to fetch a 1MB file. Mirrors without a throughput sample are assumed to be as fast as the average of the
+     * ones that have one, and every failure in a row costs as much as a slow download so a mirror that keeps breaking sinks to the bottom.
+     */
+    private double score(Mirror mirror, double fallback) {
+        Stats stat = stats.get(mirror.getUrl());
+        if (stat == null || stat.latency <= 0)
+            return Double.MAX_VALUE;
+
+        double throughput = stat.throughput > 0 ? stat.throughput : fallback;
+        double ret = stat.latency;
+        if (throughput > 0)
+            ret += 1024 * 1024 * 1000 / throughput;
+        return ret + stat.failures * 10000;
+    }
+
+    private double averageThroughput() {
+        double total = 0;
+        int count = 0;
+        for (Stats stat : stats.values()) {
+            if (stat.throughput > 0) {
+                total += stat.throughput;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : total / count;
+    }
+
+    private Stats getStats(Mirror mirror) {
+        return stats.computeIfAbsent(mirror.getUrl(), k -> new Stats());
+    }
+
+    private static double average(double old, double sample) {
+        return old <= 0 ? sample : old + (sample - old) * WEIGHT;
+    }
+
+    private void load() {
+        Path file = STATS_FILE.toPath();
+        if (!Files.isRegularFile(file))
+            return;
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            Map<String, Stats> loaded = Util.GSON.fromJson(reader, TYPE);
+            if (loaded != null)
+                loaded.forEach((k, v) -> { if (k != null && v != null) stats.put(k, v); });
+        } catch (IOException | JsonParseException e) {
+            System.out.println("Ignoring invalid mirror stats " + file + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized void save() {
+        if (!dirty)
+            return;
+        dirty = false;
+        try {
+            Path file = STATS_FILE.toPath().toAbsolutePath();
+            Files.createDirectories(file.getParent());
+            Path temp = DownloadUtils.createTemp(file.getParent(), file.getFileName().toString());
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    Util.GSON.toJson(new TreeMap<>(stats), TYPE, writer);
+                }
+                DownloadUtils.move(temp, file);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            dirty = true;
+            e.printStackTrace();
+        }
+    }
+
+    private static class Stats {
+        // Milliseconds to answer a probe, and bytes per second over real downloads, both running averages.
+        private double latency;
+        private double throughput;
+        private int failures;
+    }
+}
@@ -30,6 +30,7 @@ import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 
 import net.minecraftforge.installer.actions.ProgressCallback;
@@ -46,6 +47,13 @@ public class ProgressFrame extends JFrame implements ProgressCallback
     private final JProgressBar progressBar;
     private final JTextArea consoleArea;
 
+    private final Object lock = new Object();
+    private final StringBuilder pendingConsole = new StringBuilder();
+    private String pendingText;
+    private Integer pendingValue;
+    private Boolean pendingIndeterminate;
+    private boolean scheduled = false;
+
     public ProgressFrame(ProgressCallback parent, String title, Runnable canceler)
     {
         this.parent = parent;
@@ -109,15 +117,14 @@ public class ProgressFrame extends JFrame implements ProgressCallback
     public void start(String label)
     {
         message(label, MessagePriority.HIGH, false);
-        this.progressBar.setValue(0);
-        this.progressBar.setIndeterminate(false);
+        update(0, false);
         parent.start(label);
     }
 
     @Override
     public void progress(double progress)
     {
-        this.progressBar.setValue((int) (progress * 100));
+        update((int) (progress * 100), null);
         parent.progress(progress);
     }
 
@@ -125,7 +132,7 @@ public class ProgressFrame extends JFrame implements ProgressCallback
     public void stage(String message)
     {
         message(message, MessagePriority.HIGH, false);
-        this.progressBar.setIndeterminate(true);
+        update(null, true);
         parent.stage(message);
     }
 
@@ -137,13 +144,69 @@ public class ProgressFrame extends JFrame implements ProgressCallback
 
     public void message(String message, MessagePriority priority, boolean notifyParent)
     {
-        if (priority == MessagePriority.HIGH)
+        synchronized (lock)
         {
-            this.progressText.setText(message);
+            if (priority == MessagePriority.HIGH)
+                pendingText = message;
+            pendingConsole.append(message).append('\n');
+            schedule();
         }
-        consoleArea.append(message + "\n");
-        consoleArea.setCaretPosition(consoleArea.getDocument().getLength());
         if (notifyParent)
             parent.message(message, priority);
     }
+
+    private void update(Integer value, Boolean indeterminate)
+    {
+        synchronized (lock)
+        {
+            if (value != null)
+                pendingValue = value;
+            if (indeterminate != null)
+                pendingIndeterminate = indeterminate;
+            schedule();
+        }
+    }
+
+    /*
+     * Swing components may only be touched on the event thread, and installs call us from everywhere. Changes are collected here
+     * and applied in one go by a single queued task, so a burst of messages costs one append and one caret move.
+     */
+    private void schedule()
+    {
+        if (!scheduled)
+        {
+            scheduled = true;
+            SwingUtilities.invokeLater(this::apply);
+        }
+    }
+
+    private void apply()
+    {
+        String text, console;
+        Integer value;
+        Boolean indeterminate;
+        synchronized (lock)
+        {
+            scheduled = false;
+            text = pendingText;
+            console = pendingConsole.toString();
+            value = pendingValue;
+            indeterminate = pendingIndeterminate;
+            pendingText = null;
+            pendingConsole.setLength(0);
+            pendingValue = null;
+            pendingIndeterminate = null;
+        }
+        if (text != null)
+            this.progressText.setText(text);
+        if (value != null)
+            this.progressBar.setValue(value);
+        if (indeterminate != null)
+            this.progressBar.setIndeterminate(indeterminate);
+        if (!console.isEmpty())
+        {
+            consoleArea.append(console);
+            consoleArea.setCaretPosition(consoleArea.getDocument().getLength());
+        }
+    }
 }
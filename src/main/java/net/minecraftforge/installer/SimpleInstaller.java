@@ -25,22 +25,35 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.util.Arrays;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import javax.swing.UIManager;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
+import net.minecraftforge.installer.actions.Action;
+import net.minecraftforge.installer.actions.AsyncProgressCallback;
+import net.minecraftforge.installer.actions.BatchInstall;
 import net.minecraftforge.installer.actions.ClientInstall;
+import net.minecraftforge.installer.actions.PostProcessors;
+import net.minecraftforge.installer.actions.Prefetch;
 import net.minecraftforge.installer.actions.ProgressCallback;
+import net.minecraftforge.installer.actions.ServerInstall;
 import net.minecraftforge.installer.json.Install;
 import net.minecraftforge.installer.json.Util;
 
 public class SimpleInstaller
 {
     public static boolean headless = false;
+    private static LineCaptureStream capture = null;
+    private static final Set<ProgressCallback> flushing = Collections.newSetFromMap(new IdentityHashMap<>());
 
     public static void main(String[] args) throws IOException
     {
@@ -63,6 +76,7 @@ public class SimpleInstaller
         String vendor = System.getProperty("java.vendor", "missing vendor");
         String javaVersion = System.getProperty("java.version", "missing java version");
         String jvmVersion = System.getProperty("java.vm.version", "missing jvm version");
+        InstallMetrics.info("java", javaVersion);
         monitor.message(String.format("JVM info: %s - %s - %s", vendor, javaVersion, jvmVersion));
         monitor.message("java.net.preferIPv4Stack=" + System.getProperty("java.net.preferIPv4Stack"));
 
@@ -76,19 +90,93 @@ public class SimpleInstaller
 
         OptionParser parser = new OptionParser();
         OptionSpec<File> clientInstallOption = parser.accepts("installClient", "Install a client to the specified directory").withOptionalArg().ofType(File.class).defaultsTo(new File("."));
+        OptionSpec<File> serverInstallOption = parser.accepts("installServer", "Install a server to the specified directory, without a GUI").withOptionalArg().ofType(File.class).defaultsTo(new File("."));
+        OptionSpec<File> batchOption = parser.accepts("batch", "Install into every folder listed in this file, one 'client <folder>' or 'server <folder>' per line, without a GUI").withRequiredArg().ofType(File.class);
+        OptionSpec<Integer> batchThreadsOption = parser.accepts("batchThreads", "Number of batch targets to install at once").withRequiredArg().ofType(Integer.class).defaultsTo(BatchInstall.THREADS);
+        OptionSpec<Void> dryRunOption = parser.acceptsAll(Arrays.asList("dryRun", "dry-run"), "Only print what --installClient, --installServer or --batch would do, without changing anything");
+        OptionSpec<File> metricsOption = parser.accepts("metrics", "Write timings and counters of the install to this json file").withOptionalArg().ofType(File.class).defaultsTo(new File(getOutputName() + ".metrics.json"));
         OptionSpec<Void> helpOption = parser.acceptsAll(Arrays.asList("h", "help"),"Help with this installer");
         OptionSpec<Void> noguiOption = parser.accepts("nogui");
+        OptionSpec<Integer> downloadThreadsOption = parser.accepts("downloadThreads", "Number of libraries to download at once").withRequiredArg().ofType(Integer.class).defaultsTo(DownloadUtils.DOWNLOAD_THREADS);
+        OptionSpec<Integer> hostConnectionsOption = parser.accepts("hostConnections", "Maximum number of concurrent connections to a single server").withRequiredArg().ofType(Integer.class).defaultsTo(DownloadUtils.MAX_HOST_CONNECTIONS);
+        OptionSpec<Integer> processorThreadsOption = parser.accepts("processorThreads", "Maximum number of independent processors to run at once, 1 runs them in order").withRequiredArg().ofType(Integer.class).defaultsTo(PostProcessors.THREADS);
+        OptionSpec<Void> forkProcessorsOption = parser.accepts("forkProcessors", "Run processors in separate JVMs instead of inside the installer");
+        OptionSpec<String> processorHeapOption = parser.accepts("processorHeap", "Maximum heap of each forked processor JVM, for example 2G").withRequiredArg();
+        OptionSpec<Integer> connectTimeoutOption = parser.accepts("connectTimeout", "Connect timeout for downloads, in milliseconds").withRequiredArg().ofType(Integer.class).defaultsTo(DownloadUtils.CONNECT_TIMEOUT);
+        OptionSpec<Integer> readTimeoutOption = parser.accepts("readTimeout", "Read timeout for downloads, in milliseconds").withRequiredArg().ofType(Integer.class).defaultsTo(DownloadUtils.READ_TIMEOUT);
+        OptionSpec<Void> legacyTransportOption = parser.accepts("legacyTransport", "Download with URLConnection even if java.net.http is available");
+        OptionSpec<File> sharedCacheOption = parser.accepts("sharedCache", "Directory of a download cache shared by every install on this machine").withRequiredArg().ofType(File.class);
+        OptionSpec<Long> sharedCacheSizeOption = parser.accepts("sharedCacheSize", "Maximum size of the shared download cache, in megabytes").withRequiredArg().ofType(Long.class).defaultsTo(ArtifactCache.MAX_SIZE / 1024 / 1024);
         OptionSet optionSet = parser.parse(args);
 
         if (optionSet.has(helpOption)) {
             parser.printHelpOn(System.out);
             return;
         }
+        DownloadUtils.DOWNLOAD_THREADS = downloadThreadsOption.value(optionSet);
+        DownloadUtils.MAX_HOST_CONNECTIONS = hostConnectionsOption.value(optionSet);
+        DownloadUtils.CONNECT_TIMEOUT = connectTimeoutOption.value(optionSet);
+        DownloadUtils.READ_TIMEOUT = readTimeoutOption.value(optionSet);
+        DownloadUtils.LEGACY_TRANSPORT = optionSet.has(legacyTransportOption);
+        ArtifactCache.CACHE_DIR = sharedCacheOption.value(optionSet);
+        ArtifactCache.MAX_SIZE = sharedCacheSizeOption.value(optionSet) * 1024 * 1024;
+        PostProcessors.THREADS = processorThreadsOption.value(optionSet);
+        PostProcessors.FORK = optionSet.has(forkProcessorsOption);
+        PostProcessors.FORK_HEAP = processorHeapOption.value(optionSet);
+        BatchInstall.THREADS = batchThreadsOption.value(optionSet);
+        if (optionSet.has(batchOption))
+        {
+            headless = true;
+            Install profile = Util.loadInstallProfile();
+            List<BatchInstall.Target> targets;
+            try
+            {
+                targets = BatchInstall.read(batchOption.value(optionSet), profile);
+            }
+            catch (IOException e)
+            {
+                monitor.stage("Could not read batch file: " + e.getMessage());
+                return;
+            }
+            BatchInstall batch = new BatchInstall(profile, monitor, targets);
+            if (optionSet.has(dryRunOption))
+            {
+                batch.report();
+                return;
+            }
+            batch.run();
+            if (optionSet.has(metricsOption))
+                InstallMetrics.write(metricsOption.value(optionSet));
+            return;
+        }
         final boolean bool = optionSet.has(clientInstallOption);
-        launchGui(monitor, bool, bool ? clientInstallOption.value(optionSet) : null, optionSet.has(noguiOption));
+        final boolean server = optionSet.has(serverInstallOption);
+        if (bool && server)
+        {
+            monitor.stage("Only one of --installClient and --installServer can be used at a time");
+            return;
+        }
+        if (server)
+            headless = true;
+        if (optionSet.has(dryRunOption))
+        {
+            if (!bool && !server)
+            {
+                monitor.stage("--dry-run needs one of --installClient, --installServer or --batch");
+                return;
+            }
+            headless = true;
+            Install profile = Util.loadInstallProfile();
+            Action action = bool ? new ClientInstall(profile, monitor) : new ServerInstall(profile, monitor);
+            action.plan(bool ? clientInstallOption.value(optionSet) : serverInstallOption.value(optionSet), lib -> true).report(monitor);
+            return;
+        }
+        launchGui(monitor, bool, server, bool ? clientInstallOption.value(optionSet) : server ? serverInstallOption.value(optionSet) : null, optionSet.has(noguiOption) || server);
+        if (optionSet.has(metricsOption))
+            InstallMetrics.write(metricsOption.value(optionSet));
     }
 
-    private static void launchGui(ProgressCallback monitor, boolean installClient, File  dirToInstall, boolean noGui)
+    private static void launchGui(ProgressCallback monitor, boolean installClient, boolean installServer, File  dirToInstall, boolean noGui)
     {
         try
         {
@@ -99,51 +187,54 @@ public class SimpleInstaller
         }
 
         Install profile = Util.loadInstallProfile();
+        if (installServer && profile.hideServer())
+        {
+            monitor.stage("This installer does not support installing a server");
+            return;
+        }
+        Prefetch prefetch = installClient ? new Prefetch(profile, dirToInstall) : null;
         InstallerPanel panel = new InstallerPanel(dirToInstall, profile);
-        panel.run(monitor, installClient ? new ClientInstall(profile, monitor) : null, noGui);
+        Action action = installClient ? new ClientInstall(profile, monitor, prefetch) : installServer ? new ServerInstall(profile, monitor) : null;
+        panel.run(monitor, action, noGui);
     }
 
     private static OutputStream getLog() throws FileNotFoundException
     {
-        File f = new File(SimpleInstaller.class.getProtectionDomain().getCodeSource().getLocation().getFile());
-        File output;
-        if (f.isFile()) output = new File(f.getName() + ".log");
-        else            output = new File("installer.log");
-
-        return new BufferedOutputStream(new FileOutputStream(output));
+        return new BufferedOutputStream(new FileOutputStream(new File(getOutputName() + ".log")));
     }
 
-    static void hookStdOut(ProgressCallback monitor)
+    private static String getOutputName()
     {
-        final Pattern endingWhitespace = Pattern.compile("\\r?\\n$");
-        final OutputStream monitorStream = new OutputStream() {
-
-            @Override
-            public void write(byte[] buf, int off, int len)
-            {
-                byte[] toWrite = new byte[len];
-                System.arraycopy(buf, off, toWrite, 0, len);
-                write(toWrite);
-            }
-
-            @Override
-            public void write(byte[] b)
-            {
-                String toWrite = new String(b);
-                toWrite = endingWhitespace.matcher(toWrite).replaceAll("");
-                if (!toWrite.isEmpty()) {
-                    monitor.message(toWrite);
-                }
-            }
+        File f = new File(SimpleInstaller.class.getProtectionDomain().getCodeSource().getLocation().getFile());
+        return f.isFile() ? f.getName() : "installer";
+    }
 
-            @Override
-            public void write(int b)
-            {
-                write(new byte[] { (byte) b });
-            }
-        };
+    private static synchronized void emitPending()
+    {
+        if (capture != null)
+            capture.emitPending();
+    }
 
-        System.setOut(new PrintStream(monitorStream));
-        System.setErr(new PrintStream(monitorStream));
+    static synchronized void hookStdOut(ProgressCallback monitor)
+    {
+        if (capture != null)
+            capture.emitPending(); // Anything printed without a final newline still belongs to the old target.
+
+        Charset charset = Charset.defaultCharset();
+        PrintStream stream;
+        capture = new LineCaptureStream(monitor, charset);
+        // The last unfinished line has to be passed on before an async monitor delivers its final events and stops.
+        if (monitor instanceof AsyncProgressCallback && flushing.add(monitor))
+            ((AsyncProgressCallback)monitor).onClose(SimpleInstaller::emitPending);
+        try
+        {
+            stream = new PrintStream(capture, false, charset.name());
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new RuntimeException(e); // Can't happen, the name came from a Charset
+        }
+        System.setOut(stream);
+        System.setErr(stream);
     }
 }
@@ -0,0 +1,53 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * How {@link DownloadUtils} talks to the network. Implementations follow redirects themselves and should keep connections
+ * to a host alive between requests, most installs are hundreds of small requests to the same few servers.
+ */
+public interface Transport {
+    /**
+     * @param method  HTTP method, GET or HEAD.
+     * @param headers Extra request headers, may be empty.
+     * @return The response, after following redirects. The caller must close it, ideally after reading the body fully so the connection can be reused.
+     */
+    Response open(String method, String url, Map<String, String> headers) throws IOException;
+
+    interface Response extends Closeable {
+        int getCode();
+
+        /**
+         * @return The url that was finally requested, after redirects.
+         */
+        String getUrl();
+
+        /**
+         * @return The first value of the header, or null.
+         */
+        String getHeader(String name);
+
+        InputStream getInputStream() throws IOException;
+    }
+}
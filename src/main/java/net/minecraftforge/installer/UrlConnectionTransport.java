@@ -0,0 +1,109 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+/**
+ * Plain {@link URLConnection} transport, works everywhere including Java 8.
+ * The JDK keeps idle HTTP connections alive on its own as long as every response body is closed, instead of the connection being disconnected.
+ */
+public class UrlConnectionTransport implements Transport {
+    private static final int MAX_REDIRECTS = 3;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public UrlConnectionTransport(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public Transport.Response open(String method, String address, Map<String, String> headers) throws IOException {
+        URL url = new URL(address);
+        for (int x = 0; x < MAX_REDIRECTS; x++) { //Maximum of 3 redirects.
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            headers.forEach(connection::setRequestProperty);
+            if (!(connection instanceof HttpURLConnection))
+                return new Response(connection, 200);
+
+            HttpURLConnection hcon = (HttpURLConnection)connection;
+            hcon.setRequestMethod(method);
+            hcon.setInstanceFollowRedirects(false);
+            int res = hcon.getResponseCode();
+            if (res != HttpURLConnection.HTTP_MOVED_PERM && res != HttpURLConnection.HTTP_MOVED_TEMP && res != 307 && res != 308)
+                return new Response(connection, res);
+
+            String location = hcon.getHeaderField("Location");
+            new Response(connection, res).close(); // Close rather than disconnect, so the connection goes back to the keep-alive cache.
+            if (x == MAX_REDIRECTS - 1)
+                throw new IOException("Invalid number of redirects: " + location);
+            System.out.println("Following redirect: " + location);
+            url = new URL(url, location); // Nested in case of relative urls.
+        }
+        throw new IllegalStateException("Unreachable");
+    }
+
+    private static class Response implements Transport.Response {
+        private final URLConnection connection;
+        private final int code;
+        private InputStream stream;
+
+        private Response(URLConnection connection, int code) {
+            this.connection = connection;
+            this.code = code;
+        }
+
+        @Override
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public String getUrl() {
+            return connection.getURL().toString();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (stream == null)
+                stream = code >= 400 ? ((HttpURLConnection)connection).getErrorStream() : connection.getInputStream();
+            return stream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            InputStream input = getInputStream();
+            if (input != null)
+                input.close(); // The JDK drains small leftovers itself and hands the connection back to its keep-alive cache.
+        }
+    }
+}
@@ -21,15 +21,39 @@ package net.minecraftforge.installer.actions;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import javax.swing.JOptionPane;
 
+import net.minecraftforge.installer.ArtifactCache;
 import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.HashCache;
+import net.minecraftforge.installer.InstallMetrics;
+import net.minecraftforge.installer.MirrorSelector;
+import net.minecraftforge.installer.NamedThreadFactory;
 import net.minecraftforge.installer.SimpleInstaller;
 import net.minecraftforge.installer.json.Artifact;
 import net.minecraftforge.installer.json.Install;
+import net.minecraftforge.installer.json.Mirror;
 import net.minecraftforge.installer.json.Util;
 import net.minecraftforge.installer.json.Version;
 import net.minecraftforge.installer.json.Version.Library;
@@ -40,11 +64,13 @@ public abstract class Action {
     protected final ProgressCallback monitor;
     protected final PostProcessors processors;
     protected final Version version;
-    private List<Artifact> grabbed = new ArrayList<>();
+    private final boolean isClient;
+    private List<Artifact> grabbed = Collections.synchronizedList(new ArrayList<>());
 
     protected Action(Install profile, ProgressCallback monitor, boolean isClient) {
         this.profile = profile;
         this.monitor = monitor;
+        this.isClient = isClient;
         this.processors = new PostProcessors(profile, isClient, monitor);
         this.version = Util.loadVersion(profile);
     }
@@ -59,35 +85,198 @@ public abstract class Action {
     public abstract boolean isPathValid(File targetDir);
     public abstract String getFileError(File targetDir);
     public abstract String getSuccessMessage();
+    protected abstract File getMinecraftJar(File target);
 
-    public String getSponsorMessage() {
-        return profile.getMirror() != null ? String.format(SimpleInstaller.headless ? "Data kindly mirrored by %2$s at %1$s" : "<html><a href=\'%s\'>Data kindly mirrored by %s</a></html>", profile.getMirror().getHomepage(), profile.getMirror().getName()) : null;
+    /**
+     * Works out what {@link #run(File, Predicate)} would do in this directory, without changing anything.
+     */
+    public InstallPlan plan(File target, Predicate<String> optionals) {
+        return plan(new File(target, "libraries"), getMinecraftJar(target), optionals);
     }
 
-    protected boolean downloadLibraries(File librariesDir, Predicate<String> optionals) throws ActionCanceledException {
+    private InstallPlan plan(File librariesDir, File minecraft, Predicate<String> optionals) {
         List<Library> libraries = new ArrayList<>();
         libraries.addAll(Arrays.asList(version.getLibraries()));
         libraries.addAll(Arrays.asList(processors.getLibraries()));
+        String name = String.format("%s (%s) in %s", profile.getVersion(), isClient ? "client" : "server", librariesDir.getAbsoluteFile().getParent());
+        return new InstallPlan(name, librariesDir, minecraft, libraries, optionals, minecraft == null ? Collections.emptyList() : processors.plan(librariesDir, minecraft));
+    }
+
+    public String getSponsorMessage() {
+        Mirror mirror = profile.getMirror();
+        return mirror != null ? String.format(SimpleInstaller.headless ? "Data kindly mirrored by %2$s at %1$s" : "<html><a href=\'%s\'>Data kindly mirrored by %s</a></html>", mirror.getHomepage(), mirror.getName()) : null;
+    }
+
+    protected boolean downloadLibraries(File librariesDir, Predicate<String> optionals) throws ActionCanceledException {
+        return downloadLibraries(librariesDir, optionals, plan(librariesDir, null, optionals), files -> {});
+    }
+
+    /*
+     * Downloads the libraries and runs the processors side by side. Each processor starts as soon as the libraries it reads are in place,
+     * so processing overlaps with the tail of the downloads instead of waiting for the last one.
+     */
+    protected boolean downloadAndProcess(File librariesDir, Predicate<String> optionals, File minecraft) throws ActionCanceledException {
+        return downloadAndProcess(librariesDir, optionals, minecraft, CompletableFuture.completedFuture(true));
+    }
+
+    /**
+     * @param minecraftReady Completes with whether the minecraft jar is in place, for when it is still being fetched in the background.
+     *                       Processors reading it wait for it like they do for libraries.
+     */
+    protected boolean downloadAndProcess(File librariesDir, Predicate<String> optionals, File minecraft, CompletableFuture<Boolean> minecraftReady) throws ActionCanceledException {
+        ExecutorService runner = Executors.newSingleThreadExecutor(new NamedThreadFactory("Installer-Pipeline"));
+        AtomicReference<Future<Boolean>> processed = new AtomicReference<>();
+        try {
+            InstallPlan plan = plan(librariesDir, minecraft, optionals);
+            minecraftReady.thenAccept(ok -> {
+                if (!ok)
+                    processors.cancel();
+            });
+            boolean downloaded = downloadLibraries(librariesDir, optionals, plan, files -> {
+                if (plan.processorsDone()) {
+                    // Every output is already there, so there's nothing to extract or load either.
+                    if (!plan.getProcessors().isEmpty())
+                        monitor.stage("Processor outputs are up to date");
+                    for (InstallPlan.ProcessorPlan proc : plan.getProcessors())
+                        InstallMetrics.processor(proc.getName(), 0, "cached");
+                    processed.set(CompletableFuture.completedFuture(true));
+                    return;
+                }
+                Map<String, CompletableFuture<Boolean>> pending = new HashMap<>(files);
+                pending.put(minecraft.getAbsolutePath(), minecraftReady);
+                processed.set(runner.submit(() -> processors.process(librariesDir, minecraft, pending)));
+            });
+            Future<Boolean> result = processed.get();
+            if (!downloaded) // Processors waiting on a failed library give up by themselves, the rest shouldn't start either.
+                processors.cancel();
+            while (true) {
+                try {
+                    return result.get(100, TimeUnit.MILLISECONDS) & downloaded & minecraftReady.get();
+                } catch (TimeoutException e) {
+                    checkCancel();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new ActionCanceledException(e);
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            error("Failed to run processors: " + e.getCause());
+            return false;
+        } finally {
+            runner.shutdownNow();
+        }
+    }
+
+    /**
+     * @param plan    Libraries it says are already done are only reported, the rest are handed to {@link DownloadUtils#downloadLibrary}.
+     * @param started Given a future for every library file, by absolute path, as soon as all downloads are queued. Each completes with whether
+     *                that file was downloaded and verified, so work that needs it can start before the others finish.
+     */
+    protected boolean downloadLibraries(File librariesDir, Predicate<String> optionals, InstallPlan plan, Consumer<Map<String, CompletableFuture<Boolean>>> started) throws ActionCanceledException {
+        List<Library> libraries = plan.getLibraries();
+
+        // Libraries that resolve to the same file have to be handled by the same task, or two workers would write it at once.
+        Map<File, List<Library>> targets = new LinkedHashMap<>();
+        for (Library lib : libraries)
+            targets.computeIfAbsent(lib.getName().getLocalPath(librariesDir), k -> new ArrayList<>()).add(lib);
 
-        StringBuilder output = new StringBuilder();
-        final double steps = libraries.size();
-        int progress = 1;
         monitor.start("Downloading libraries");
-        for (Library lib : libraries) {
-            checkCancel();
-            monitor.progress(progress++ / steps);
-            if (!DownloadUtils.downloadLibrary(monitor, profile.getMirror(), lib, librariesDir, optionals, grabbed)) {
+        long start = System.nanoTime();
+        final double steps = libraries.size();
+        int progress = 0;
+        Map<String, CompletableFuture<Boolean>> ready = new HashMap<>();
+        Map<File, List<Library>> work = new LinkedHashMap<>();
+        for (Entry<File, List<Library>> e : targets.entrySet()) {
+            if (!e.getValue().stream().allMatch(lib -> plan.getState(lib).isDone())) {
+                work.put(e.getKey(), e.getValue());
+                continue;
+            }
+            ready.put(e.getKey().getAbsolutePath(), CompletableFuture.completedFuture(true));
+            for (Library lib : e.getValue()) {
+                if (plan.getState(lib) == InstallPlan.LibraryState.DISABLED) {
+                    monitor.message(String.format("Considering library %s: Not Downloading {Disabled}", lib.getName().getDescriptor()));
+                } else {
+                    InstallMetrics.count("libraries.upToDate");
+                    monitor.message(String.format("Considering library %s: Up to date", lib.getName().getDescriptor()));
+                }
+                monitor.progress(++progress / steps);
+            }
+        }
+
+        // Only resolve mirrors when something may be downloaded, the first lookup probes every mirror.
+        boolean downloading = plan.count(InstallPlan.LibraryState.DOWNLOAD) > 0 || plan.count(InstallPlan.LibraryState.SHARED) > 0;
+        MirrorSelector mirrors = downloading ? profile.getMirrors() : null;
+        ExecutorService pool = work.isEmpty() ? null : Executors.newFixedThreadPool(Math.max(1, Math.min(DownloadUtils.DOWNLOAD_THREADS, work.size())), new NamedThreadFactory("Installer-Download"));
+        try {
+            CompletionService<List<LibraryResult>> service = pool == null ? null : new ExecutorCompletionService<>(pool);
+            for (Entry<File, List<Library>> e : work.entrySet()) {
+                CompletableFuture<Boolean> done = new CompletableFuture<>();
+                ready.put(e.getKey().getAbsolutePath(), done);
+                service.submit(() -> {
+                    List<LibraryResult> ret = new ArrayList<>();
+                    boolean success = false;
+                    try {
+                        for (Library lib : e.getValue()) {
+                            DeferredCallback log = new DeferredCallback();
+                            ret.add(new LibraryResult(lib, log, DownloadUtils.downloadLibrary(log, mirrors, lib, librariesDir, optionals, grabbed)));
+                        }
+                        success = ret.stream().allMatch(r -> r.success);
+                    } finally {
+                        done.complete(success);
+                    }
+                    return ret;
+                });
+            }
+            started.accept(Collections.unmodifiableMap(ready));
+
+            Set<Library> failed = new HashSet<>();
+            for (int x = 0; x < work.size(); x++) {
+                Future<List<LibraryResult>> next;
+                while ((next = service.poll(100, TimeUnit.MILLISECONDS)) == null)
+                    checkCancel();
+                checkCancel();
+
+                for (LibraryResult result : next.get()) {
+                    result.log.replay(monitor);
+                    monitor.progress(++progress / steps);
+                    if (!result.success)
+                        failed.add(result.library);
+                }
+            }
+
+            // Report in profile order, regardless of which download finished first.
+            StringBuilder output = new StringBuilder();
+            for (Library lib : libraries) {
+                if (!failed.contains(lib))
+                    continue;
                 LibraryDownload download = lib.getDownloads() == null ? null :  lib.getDownloads().getArtifact();
                 if (download != null && !download.getUrl().isEmpty()) // If it doesn't have a URL we can't download it, assume we install it later
                     output.append('\n').append(lib.getName());
             }
-        }
-        String bad = output.toString();
-        if (!bad.isEmpty()) {
-            error("These libraries failed to download. Try again.\n" + bad);
+            String bad = output.toString();
+            if (!bad.isEmpty()) {
+                error("These libraries failed to download. Try again.\n" + bad);
+                return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            throw new ActionCanceledException(e);
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            error("Failed to download libraries: " + e.getCause());
             return false;
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+            // Nobody waiting on a download that never ran should wait forever.
+            ready.values().forEach(f -> f.complete(false));
+            InstallMetrics.phase("libraries", start);
+            HashCache.get(librariesDir).save();
+            if (ArtifactCache.get() != null)
+                ArtifactCache.get().save();
+            if (mirrors != null)
+                mirrors.save();
         }
-        return true;
     }
 
     protected int downlaodedCount() {
@@ -95,7 +284,19 @@ public abstract class Action {
     }
 
     protected int getTaskCount() {
-        return profile.getLibraries().length + processors.getTaskCount();
+        return version.getLibraries().length + processors.getTaskCount();
+    }
+
+    private static class LibraryResult {
+        private final Library library;
+        private final DeferredCallback log;
+        private final boolean success;
+
+        private LibraryResult(Library library, DeferredCallback log, boolean success) {
+            this.library = library;
+            this.log = log;
+            this.success = success;
+        }
     }
 
     protected void checkCancel() throws ActionCanceledException {
@@ -0,0 +1,181 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Hands progress events to another callback on a background thread, so the threads doing the work never wait on a console or log file.
+ *
+ * Events are queued without blocking and delivered in order, in batches at most every {@link #INTERVAL} milliseconds. Runs of progress
+ * updates within a batch collapse to the last one, and if the target is {@link Flushable} it is flushed once per batch instead of once
+ * per line. Anything still queued when the JVM shuts down is delivered by a shutdown hook, after the {@link #onClose} tasks have run.
+ */
+public class AsyncProgressCallback implements ProgressCallback, Closeable {
+    public static long INTERVAL = 50;
+
+    private final ProgressCallback target;
+    private final LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final Thread hook;
+    private final List<Runnable> onClose = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    public AsyncProgressCallback(ProgressCallback target) {
+        this.target = target;
+        this.thread = new Thread(this::run, "Installer-Progress");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        this.hook = new Thread(this::close, "Installer-Progress-Shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    @Override
+    public void start(String label) {
+        post(new Event(Event.START, label, null, 0));
+    }
+
+    @Override
+    public void stage(String message) {
+        post(new Event(Event.STAGE, message, null, 0));
+    }
+
+    @Override
+    public void message(String message, MessagePriority priority) {
+        post(new Event(Event.MESSAGE, message, priority, 0));
+    }
+
+    @Override
+    public void progress(double progress) {
+        post(new Event(Event.PROGRESS, null, null, progress));
+    }
+
+    /**
+     * Runs the task when this is closed or the JVM shuts down, before the last events are delivered. For anything that holds
+     * back events of its own, so they aren't lost to a shutdown hook running in the wrong order.
+     */
+    public void onClose(Runnable task) {
+        onClose.add(task);
+    }
+
+    /**
+     * Delivers everything queued so far and stops the background thread. Events sent after this are delivered directly.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        for (Runnable task : onClose)
+            task.run();
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, the hook is what called us.
+        }
+    }
+
+    private void post(Event event) {
+        queue.offer(event);
+        if (closed)
+            drain(); // Nobody is left to pick it up.
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>();
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                dispatch(batch);
+                batch.clear();
+                Thread.sleep(INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            // Closed, whatever is left is drained by the closer.
+        }
+    }
+
+    private synchronized void drain() {
+        List<Event> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        dispatch(batch);
+    }
+
+    private synchronized void dispatch(List<Event> batch) {
+        Event pending = null;
+        for (Event event : batch) {
+            if (event.type == Event.PROGRESS) {
+                pending = event;
+                continue;
+            }
+            if (pending != null) {
+                target.progress(pending.progress);
+                pending = null;
+            }
+            switch (event.type) {
+                case Event.START:   target.start(event.text); break;
+                case Event.STAGE:   target.stage(event.text); break;
+                case Event.MESSAGE: target.message(event.text, event.priority); break;
+            }
+        }
+        if (pending != null)
+            target.progress(pending.progress);
+
+        if (!batch.isEmpty() && target instanceof Flushable) {
+            try {
+                ((Flushable)target).flush();
+            } catch (IOException e) {
+                // Nowhere left to report it, stdout and stderr usually end up here too.
+            }
+        }
+    }
+
+    private static class Event {
+        private static final int START = 0;
+        private static final int STAGE = 1;
+        private static final int MESSAGE = 2;
+        private static final int PROGRESS = 3;
+
+        private final int type;
+        private final String text;
+        private final MessagePriority priority;
+        private final double progress;
+
+        private Event(int type, String text, MessagePriority priority, double progress) {
+            this.type = type;
+            this.text = text;
+            this.priority = priority;
+            this.progress = progress;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import net.minecraftforge.installer.ArtifactCache;
+import net.minecraftforge.installer.NamedThreadFactory;
+import net.minecraftforge.installer.json.Install;
+
+/**
+ * Installs the profile into many folders from one JVM, for provisioning lots of clients or servers at once.
+ *
+ * The targets come from a file with one target per line, like "client /path/to/.minecraft" or "server /srv/mc1". Blank lines and
+ * lines starting with # are ignored.
+ * Every target shares the parsed profile, the mirror probes, one processor runtime with its warm classloaders and forked JVMs, and a
+ * shared cache, so each library and each processor output with a known checksum is fetched or built once and linked into the others.
+ * Without --sharedCache that cache lives in a temp folder for the length of the batch.
+ */
+public class BatchInstall {
+    // Number of targets installed at the same time.
+    public static int THREADS = 2;
+
+    private final Install profile;
+    private final ProgressCallback monitor;
+    private final List<Target> targets;
+
+    public BatchInstall(Install profile, ProgressCallback monitor, List<Target> targets) {
+        this.profile = profile;
+        this.monitor = monitor;
+        this.targets = targets;
+    }
+
+    /**
+     * Reads the targets from a batch file, rejecting any side the profile doesn't support installing.
+     */
+    public static List<Target> read(File file, Install profile) throws IOException {
+        List<Target> ret = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#')
+                    continue;
+                String[] pts = line.split("\\s+", 2);
+                if (pts.length != 2 || !(pts[0].equals("client") || pts[0].equals("server")))
+                    throw new IOException("Invalid batch entry on line " + number + ", expected '<client|server> <folder>': " + line);
+                boolean client = pts[0].equals("client");
+                if (client ? profile.hideClient() : profile.hideServer())
+                    throw new IOException("This installer does not support installing a " + pts[0] + " (line " + number + ")");
+                ret.add(new Target(client, new File(pts[1])));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Prints the install plan of every target instead of installing.
+     */
+    public void report() {
+        for (Target target : targets)
+            (target.client ? new ClientInstall(profile, monitor) : new ServerInstall(profile, monitor)).plan(target.folder, lib -> true).report(monitor);
+    }
+
+    public boolean run() {
+        if (targets.isEmpty()) {
+            monitor.stage("Nothing to install, the batch file is empty");
+            return true;
+        }
+
+        Path temp = null;
+        if (ArtifactCache.CACHE_DIR == null) {
+            try {
+                temp = Files.createTempDirectory("forge_installer_batch");
+                ArtifactCache.CACHE_DIR = temp.toFile();
+            } catch (IOException e) {
+                e.printStackTrace(); // Still works, every target just downloads for itself.
+            }
+        }
+
+        monitor.start("Installing " + profile.getVersion() + " into " + targets.size() + " folders");
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(THREADS, targets.size())), new NamedThreadFactory("Installer-Batch"));
+        try (ProcessorRuntime runtime = new ProcessorRuntime();
+             ForkedJvmPool forks = PostProcessors.FORK ? new ForkedJvmPool(Math.max(1, PostProcessors.THREADS * Math.min(THREADS, targets.size())), PostProcessors.FORK_HEAP) : null) {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (Target target : targets) {
+                ProgressCallback log = (message, priority) -> monitor.message('[' + target.folder.getPath() + "] " + message, priority);
+                Action action = target.client ? new ClientInstall(profile, log) : new ServerInstall(profile, log);
+                action.processors.share(runtime, forks);
+                results.add(pool.submit(() -> action.run(target.folder, lib -> true)));
+            }
+
+            List<Target> failed = new ArrayList<>();
+            for (int x = 0; x < targets.size(); x++) {
+                boolean success;
+                try {
+                    success = results.get(x).get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    success = false;
+                }
+                monitor.progress((x + 1.0) / targets.size());
+                if (!success)
+                    failed.add(targets.get(x));
+            }
+
+            monitor.stage("Installed " + (targets.size() - failed.size()) + " of " + targets.size() + " targets");
+            for (Target target : failed)
+                monitor.message("  Failed: " + (target.client ? "client " : "server ") + target.folder);
+            return failed.isEmpty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            pool.shutdownNow();
+            if (temp != null) {
+                ArtifactCache.CACHE_DIR = null;
+                delete(temp);
+            }
+        }
+    }
+
+    private static void delete(Path dir) {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static class Target {
+        private final boolean client;
+        private final File folder;
+
+        public Target(boolean client, File folder) {
+            this.client = client;
+            this.folder = folder;
+        }
+    }
+}
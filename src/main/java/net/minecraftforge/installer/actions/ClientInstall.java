@@ -32,9 +32,15 @@ import net.minecraftforge.installer.json.Version;
 import net.minecraftforge.installer.json.Version.Download;
 
 public class ClientInstall extends Action {
+    private final Prefetch prefetch;
 
     public ClientInstall(Install profile, ProgressCallback monitor) {
+        this(profile, monitor, null);
+    }
+
+    public ClientInstall(Install profile, ProgressCallback monitor, Prefetch prefetch) {
         super(profile, monitor, true);
+        this.prefetch = prefetch;
     }
 
     @Override
@@ -62,10 +68,12 @@ public class ClientInstall extends Action {
         }
         this.checkCancel();
 
-        File clientTarget = new File(target, "client.jar");
+        File clientTarget = getMinecraftJar(target);
+        if (!clientTarget.exists() && prefetch != null && prefetch.install(target, monitor))
+            monitor.message("Using prefetched minecraft client");
         if (!clientTarget.exists()) {
             File versionJson = new File(target, "client.json");
-            Version vanilla = Util.getVanillaVersion(profile.getMinecraft(), versionJson);
+            Version vanilla = Util.getVanillaDownloads(profile.getMinecraft(), versionJson);
             if (vanilla == null) {
                 error("Failed to download version manifest, can not find client jar URL.");
                 return false;
@@ -85,12 +93,8 @@ public class ClientInstall extends Action {
             }
         }
 
-        // Download Libraries
-        if (!downloadLibraries(librariesDir, optionals))
-            return false;
-        this.checkCancel();
-
-        if (!processors.process(librariesDir, clientTarget))
+        // Download Libraries, and run the processors as their inputs arrive
+        if (!downloadAndProcess(librariesDir, optionals, clientTarget))
             return false;
 
         this.checkCancel();
@@ -98,6 +102,11 @@ public class ClientInstall extends Action {
         return true;
     }
 
+    @Override
+    protected File getMinecraftJar(File target) {
+        return new File(target, "client.jar");
+    }
+
     @Override
     public boolean isPathValid(File targetDir) {
         return targetDir.exists();
@@ -0,0 +1,55 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Records messages from a background task so they can be replayed on the install thread as one block,
+ * instead of interleaving with the output of other tasks.
+ */
+class DeferredCallback implements ProgressCallback {
+    private final List<Consumer<ProgressCallback>> events = new ArrayList<>();
+
+    @Override
+    public void start(String label) {
+        events.add(m -> m.start(label));
+    }
+
+    @Override
+    public void stage(String message) {
+        events.add(m -> m.stage(message));
+    }
+
+    @Override
+    public void message(String message, MessagePriority priority) {
+        events.add(m -> m.message(message, priority));
+    }
+
+    @Override
+    public void progress(double progress) {
+        // Progress is aggregated by whoever owns the task.
+    }
+
+    void replay(ProgressCallback target) {
+        events.forEach(e -> e.accept(target));
+    }
+}
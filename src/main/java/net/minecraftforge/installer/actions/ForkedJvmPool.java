@@ -0,0 +1,185 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs processors in separate JVMs instead of inside the installer, so they get their own heap, statics and System.exit.
+ * JVMs are started up front and handed back to the pool after each job, so only the first processor on each one pays for startup.
+ * A JVM whose processor exits it is simply replaced.
+ */
+class ForkedJvmPool implements Closeable {
+    // System properties passed on to the forked JVMs, so processors see the same network and file setup as the installer.
+    private static final String[] PROPERTIES = {
+        "http.proxyHost", "http.proxyPort", "http.proxyUser", "http.proxyPassword", "http.nonProxyHosts",
+        "https.proxyHost", "https.proxyPort", "https.proxyUser", "https.proxyPassword",
+        "socksProxyHost", "socksProxyPort", "java.net.useSystemProxies", "java.net.preferIPv4Stack", "java.net.preferIPv6Addresses",
+        "javax.net.ssl.trustStore", "javax.net.ssl.trustStorePassword", "javax.net.ssl.trustStoreType",
+        "java.io.tmpdir", "file.encoding", "user.home", "user.dir"
+    };
+
+    private final String heap;
+    private final LinkedBlockingDeque<Worker> idle = new LinkedBlockingDeque<>();
+    private final List<Worker> all = new ArrayList<>();
+    private boolean closed = false;
+
+    ForkedJvmPool(int size, String heap) throws IOException {
+        this.heap = heap;
+        for (int x = 0; x < size; x++)
+            idle.add(start());
+    }
+
+    /**
+     * Runs a processor on a pooled JVM, passing every line it prints to the monitor.
+     * @return The processor's exit code, 0 if its main method returned normally.
+     */
+    int run(List<File> classpath, String mainClass, List<String> args, ProgressCallback monitor) throws IOException, InterruptedException {
+        Worker worker = acquire();
+        boolean reuse = false;
+        try {
+            DataOutputStream out = worker.stdin;
+            out.writeInt(classpath.size());
+            for (File file : classpath)
+                out.writeUTF(file.getAbsolutePath());
+            out.writeUTF(mainClass);
+            out.writeInt(args.size());
+            for (String arg : args)
+                out.writeUTF(arg);
+            out.flush();
+
+            String line;
+            while ((line = worker.stdout.readLine()) != null) {
+                int idx = line.indexOf(worker.token);
+                if (idx == -1) {
+                    monitor.message(line);
+                } else {
+                    if (idx > 0)
+                        monitor.message(line.substring(0, idx));
+                    reuse = true;
+                    return Integer.parseInt(line.substring(idx + worker.token.length()).trim());
+                }
+            }
+            // The JVM died under us, most likely the processor called System.exit.
+            return worker.process.waitFor();
+        } finally {
+            if (reuse)
+                release(worker);
+            else
+                worker.process.destroy();
+        }
+    }
+
+    private Worker acquire() throws IOException {
+        Worker worker = idle.pollFirst();
+        while (worker != null && !worker.process.isAlive())
+            worker = idle.pollFirst();
+        return worker == null ? start() : worker;
+    }
+
+    private synchronized void release(Worker worker) {
+        if (closed)
+            worker.stop();
+        else
+            idle.addFirst(worker); // Most recently used first, its JIT is warmest.
+    }
+
+    private synchronized Worker start() throws IOException {
+        if (closed)
+            throw new IOException("Processor JVM pool is closed");
+
+        List<String> cmd = new ArrayList<>();
+        cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+        if (heap != null && !heap.isEmpty())
+            cmd.add("-Xmx" + heap);
+        for (String key : PROPERTIES) {
+            String value = System.getProperty(key);
+            if (value != null)
+                cmd.add("-D" + key + '=' + value);
+        }
+        cmd.add("-cp");
+        cmd.add(getInstallerPath());
+        cmd.add(ProcessorHost.class.getName());
+        String token = "#processor-" + UUID.randomUUID();
+        cmd.add(token);
+
+        Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        Worker worker = new Worker(process, token);
+        all.add(worker);
+        return worker;
+    }
+
+    private static String getInstallerPath() throws IOException {
+        try {
+            return new File(ProcessorHost.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Worker worker : all)
+            worker.stop();
+        all.clear();
+        idle.clear();
+    }
+
+    private static class Worker {
+        private final Process process;
+        private final String token;
+        private final DataOutputStream stdin;
+        private final BufferedReader stdout;
+
+        private Worker(Process process, String token) {
+            this.process = process;
+            this.token = token;
+            this.stdin = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        private void stop() {
+            try {
+                stdin.writeInt(-1);
+                stdin.flush();
+                if (!process.waitFor(5, TimeUnit.SECONDS))
+                    process.destroy();
+            } catch (IOException e) {
+                process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
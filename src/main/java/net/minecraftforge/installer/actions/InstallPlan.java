@@ -0,0 +1,216 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import net.minecraftforge.installer.ArtifactCache;
+import net.minecraftforge.installer.HashCache;
+import net.minecraftforge.installer.JarExtractor;
+import net.minecraftforge.installer.json.Artifact;
+import net.minecraftforge.installer.json.Version.Library;
+import net.minecraftforge.installer.json.Version.LibraryDownload;
+
+/**
+ * What an install is going to do to a target directory, worked out up front without changing anything or touching the network.
+ *
+ * Every library is checked against the files already there, the shared cache and the installer itself, and every processor against the
+ * outputs it declares. Installs use the plan to skip whatever is already done, and --dry-run prints it instead of installing.
+ */
+public class InstallPlan {
+    public enum LibraryState {
+        VALID("Up to date"),
+        DISABLED("Disabled"),
+        SHARED("Shared cache"),
+        EXTRACT("Extract"),
+        DOWNLOAD("Download"),
+        MISSING("No source");
+
+        private final String label;
+
+        private LibraryState(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return True if nothing needs to be done for a library in this state.
+         */
+        public boolean isDone() {
+            return this == VALID || this == DISABLED;
+        }
+    }
+
+    public enum ProcessorState {
+        VALID("Up to date"),
+        SHARED("Shared cache"),
+        RUN("Run");
+
+        private final String label;
+
+        private ProcessorState(String label) {
+            this.label = label;
+        }
+    }
+
+    private final String name;
+    private final File minecraft;
+    private final List<Library> libraries;
+    private final Map<Library, LibraryState> states = new IdentityHashMap<>();
+    private final List<ProcessorPlan> processors;
+
+    InstallPlan(String name, File librariesDir, File minecraft, List<Library> libraries, Predicate<String> optionals, List<ProcessorPlan> processors) {
+        this.name = name;
+        this.minecraft = minecraft;
+        this.libraries = libraries;
+        this.processors = processors;
+
+        HashCache cache = HashCache.get(librariesDir);
+        ArtifactCache shared = ArtifactCache.get();
+        JarExtractor jar = JarExtractor.get();
+        for (Library lib : libraries)
+            states.put(lib, check(lib, librariesDir, optionals, cache, shared, jar));
+    }
+
+    /*
+     * Mirrors the order DownloadUtils.downloadLibrary tries things in, so the plan says what it will actually do.
+     */
+    private static LibraryState check(Library lib, File librariesDir, Predicate<String> optionals, HashCache cache, ArtifactCache shared, JarExtractor jar) {
+        Artifact artifact = lib.getName();
+        if (!optionals.test(artifact.getDescriptor()))
+            return LibraryState.DISABLED;
+
+        LibraryDownload download = lib.getDownloads() == null ? null : lib.getDownloads().getArtifact();
+        String sha1 = download == null ? null : download.getSha1();
+        File target = artifact.getLocalPath(librariesDir);
+        if (target.exists() && (sha1 == null || sha1.equals(cache.getSha1(target))))
+            return LibraryState.VALID;
+        if (shared != null && sha1 != null && shared.has(sha1))
+            return LibraryState.SHARED;
+        if (jar.has("maven/" + artifact.getPath()))
+            return LibraryState.EXTRACT;
+        if (download == null || download.getUrl() == null || download.getUrl().isEmpty())
+            return LibraryState.MISSING;
+        return LibraryState.DOWNLOAD;
+    }
+
+    public List<Library> getLibraries() {
+        return Collections.unmodifiableList(libraries);
+    }
+
+    public LibraryState getState(Library library) {
+        return states.get(library);
+    }
+
+    public List<ProcessorPlan> getProcessors() {
+        return Collections.unmodifiableList(processors);
+    }
+
+    public int count(LibraryState state) {
+        return (int)libraries.stream().filter(l -> states.get(l) == state).count();
+    }
+
+    public int count(ProcessorState state) {
+        return (int)processors.stream().filter(p -> p.state == state).count();
+    }
+
+    /**
+     * @return Bytes still to be downloaded, as far as the profile says. Libraries without a size count as 0.
+     */
+    public long getDownloadSize() {
+        long ret = 0;
+        for (Library lib : libraries) {
+            if (states.get(lib) == LibraryState.DOWNLOAD)
+                ret += lib.getDownloads().getArtifact().getSize();
+        }
+        return ret;
+    }
+
+    public boolean librariesDone() {
+        return libraries.stream().allMatch(l -> states.get(l).isDone());
+    }
+
+    public boolean processorsDone() {
+        return processors.stream().allMatch(p -> p.state == ProcessorState.VALID);
+    }
+
+    public boolean isDone() {
+        return (minecraft == null || minecraft.isFile()) && librariesDone() && processorsDone();
+    }
+
+    public void report(ProgressCallback monitor) {
+        monitor.stage("Install plan for " + name);
+        if (minecraft != null)
+            monitor.message("  Minecraft jar: " + minecraft.getAbsolutePath() + (minecraft.isFile() ? "" : " - Missing, will be downloaded"));
+
+        monitor.message(String.format("  Libraries: %d up to date, %d disabled, %d from the shared cache, %d extracted, %d to download (%s)",
+            count(LibraryState.VALID), count(LibraryState.DISABLED), count(LibraryState.SHARED), count(LibraryState.EXTRACT),
+            count(LibraryState.DOWNLOAD), formatSize(getDownloadSize())));
+        for (Library lib : libraries) {
+            LibraryState state = states.get(lib);
+            if (state.isDone())
+                continue;
+            String line = String.format("    %-12s %s", state.label, lib.getName().getDescriptor());
+            if (state == LibraryState.DOWNLOAD)
+                line += " (" + formatSize(lib.getDownloads().getArtifact().getSize()) + ')';
+            monitor.message(line);
+        }
+
+        monitor.message(String.format("  Processors: %d up to date, %d from the shared cache, %d to run",
+            count(ProcessorState.VALID), count(ProcessorState.SHARED), count(ProcessorState.RUN)));
+        for (ProcessorPlan proc : processors) {
+            if (proc.state != ProcessorState.VALID)
+                monitor.message(String.format("    %-12s %s", proc.state.label, proc.name));
+        }
+
+        if (isDone())
+            monitor.message("  Nothing to do, already installed.");
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        if (bytes < 1024 * 1024)
+            return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    public static class ProcessorPlan {
+        private final String name;
+        private final ProcessorState state;
+
+        ProcessorPlan(String name, ProcessorState state) {
+            this.name = name;
+            this.state = state;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ProcessorState getState() {
+            return state;
+        }
+    }
+}
@@ -21,24 +21,34 @@ package net.minecraftforge.installer.actions;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import javax.swing.JOptionPane;
 
-import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.ArtifactCache;
+import net.minecraftforge.installer.HashCache;
+import net.minecraftforge.installer.InstallMetrics;
+import net.minecraftforge.installer.JarExtractor;
+import net.minecraftforge.installer.LineCaptureStream;
+import net.minecraftforge.installer.NamedThreadFactory;
 import net.minecraftforge.installer.SimpleInstaller;
 import net.minecraftforge.installer.actions.ProgressCallback.MessagePriority;
 import net.minecraftforge.installer.json.Artifact;
@@ -47,12 +57,26 @@ import net.minecraftforge.installer.json.Install.Processor;
 import net.minecraftforge.installer.json.Version.Library;
 
 public class PostProcessors {
+    // Maximum number of processors run at the same time, independent processors can run in parallel. 1 runs them strictly in order.
+    public static int THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    // Run each processor in a separate JVM, drawn from a pool of THREADS warm JVMs, instead of inside the installer.
+    public static boolean FORK = false;
+    // Maximum heap of each forked JVM, in -Xmx format. Null to use the JVM default.
+    public static String FORK_HEAP = null;
+    // Data files extracted from the installer, kept between runs and keyed by content so repeat installs skip them.
+    // Per user, files in here are trusted as long as their size and modification time are unchanged.
+    public static File DATA_CACHE = new File(System.getProperty("user.home"), ".forge_installer" + File.separator + "data");
+
     private final Install profile;
     private final boolean isClient;
     private final ProgressCallback monitor;
     private final boolean hasTasks;
     private final Map<String, String> data;
     private final List<Processor> processors;
+    private final AtomicInteger progress = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private ProcessorRuntime sharedRuntime = null;
+    private ForkedJvmPool sharedForks = null;
 
     public PostProcessors(Install profile, boolean isClient, ProgressCallback monitor) {
         this.profile = profile;
@@ -67,205 +91,536 @@ public class PostProcessors {
         return hasTasks ? profile.getLibraries() : new Library[0];
     }
 
+    /**
+     * Runs processors on a runtime and JVM pool owned by the caller instead of ones made and closed for this install.
+     */
+    void share(ProcessorRuntime runtime, ForkedJvmPool forks) {
+        this.sharedRuntime = runtime;
+        this.sharedForks = forks;
+    }
+
+    /**
+     * Keeps processors that haven't started yet from starting, the ones already running finish normally.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
     public int getTaskCount() {
-        return hasTasks ? 0 :
+        return !hasTasks ? 0 :
             profile.getLibraries().length +
             processors.size() +
             profile.getData(isClient).size();
     }
 
-    public boolean process(File librariesDir, File minecraft) {
-        try {
-            if (!data.isEmpty()) {
-                StringBuilder err = new StringBuilder();
-                Path temp  = Files.createTempDirectory("forge_installer");
-                monitor.start("Created Temporary Directory: " + temp);
-                double steps = data.size();
-                int progress = 1;
-                for (String key : data.keySet()) {
-                    monitor.progress(progress++ / steps);
-                    String value = data.get(key);
+    /**
+     * Checks what each processor would do without running anything. A processor is up to date when every output it declares is already
+     * there with the right checksum, the same check it makes before it runs. Processors without declared outputs always run.
+     */
+    public List<InstallPlan.ProcessorPlan> plan(File librariesDir, File minecraft) {
+        HashCache cache = HashCache.get(librariesDir);
+        ArtifactCache shared = ArtifactCache.get();
+        Map<String, String> values = new HashMap<>();
+        for (Entry<String, String> e : data.entrySet()) {
+            String value = resolveData(e.getValue(), librariesDir);
+            if (value != null) // Files in the installer aren't extracted yet, no output should point at one anyway.
+                values.put(e.getKey(), value);
+        }
+        values.put("SIDE", isClient ? "client" : "server");
+        values.put("MINECRAFT_JAR", minecraft.getAbsolutePath());
 
-                    if (value.charAt(0) == '[' && value.charAt(value.length() - 1) == ']') { //Artifact
-                        data.put(key, Artifact.from(value.substring(1, value.length() -1)).getLocalPath(librariesDir).getAbsolutePath());
-                    } else if (value.charAt(0) == '\'' && value.charAt(value.length() - 1) == '\'') { //Literal
-                        data.put(key, value.substring(1, value.length() -1));
-                    } else {
-                        File target = Paths.get(temp.toString(), value).toFile();
-                        monitor.message("  Extracting: " + value);
-                        if (!DownloadUtils.extractFile(value, target))
-                            err.append("\n  ").append(value);
-                        data.put(key, target.getAbsolutePath());
+        List<InstallPlan.ProcessorPlan> ret = new ArrayList<>();
+        for (Processor proc : processors) {
+            Map<String, String> outputs = resolveOutputs(proc, librariesDir, values);
+            InstallPlan.ProcessorState state = outputs == null || outputs.isEmpty() ? InstallPlan.ProcessorState.RUN : InstallPlan.ProcessorState.VALID;
+            if (outputs != null) {
+                for (Entry<String, String> e : outputs.entrySet()) {
+                    File artifact = new File(e.getKey());
+                    if (artifact.isFile() && e.getValue().equals(cache.getSha1(artifact)))
+                        continue;
+                    if (shared != null && shared.has(e.getValue())) {
+                        state = InstallPlan.ProcessorState.SHARED;
+                        continue;
                     }
+                    state = InstallPlan.ProcessorState.RUN;
+                    break;
                 }
-                if (err.length() > 0) {
-                    error("Failed to extract files from archive: " + err.toString());
+            }
+            ret.add(new InstallPlan.ProcessorPlan(proc.getJar().getDescriptor(), state));
+        }
+        return ret;
+    }
+
+    public boolean process(File librariesDir, File minecraft) {
+        return process(librariesDir, minecraft, Collections.emptyMap());
+    }
+
+    /**
+     * @param pending Files still being downloaded, by absolute path. A processor reading one of them waits for it, and fails quietly if the
+     *                download does, the downloader reports that itself.
+     */
+    public boolean process(File librariesDir, File minecraft, Map<String, CompletableFuture<Boolean>> pending) {
+        HashCache cache = HashCache.get(librariesDir);
+        long start = System.nanoTime();
+        boolean borrowed = sharedRuntime != null;
+        try (ProcessorRuntime ownRuntime = borrowed ? null : new ProcessorRuntime();
+             ForkedJvmPool ownForks = !borrowed && FORK && !processors.isEmpty() ? new ForkedJvmPool(Math.max(1, Math.min(THREADS, processors.size())), FORK_HEAP) : null) {
+            ProcessorRuntime runtime = borrowed ? sharedRuntime : ownRuntime;
+            ForkedJvmPool forks = borrowed ? sharedForks : ownForks;
+            if (!data.isEmpty()) {
+                long extractStart = System.nanoTime();
+                boolean extracted = extractData(librariesDir);
+                InstallMetrics.phase("extractData", extractStart);
+                if (!extracted)
                     return false;
-                }
             }
             data.put("SIDE", isClient ? "client" : "server");
             data.put("MINECRAFT_JAR", minecraft.getAbsolutePath());
 
-            int progress = 1;
             if (processors.size() == 1) {
                 monitor.stage("Building Processor");
             } else {
                 monitor.start("Building Processors");
             }
-            for (Processor proc : processors) {
-                monitor.progress((double) progress++ / processors.size());
-                log("===============================================================================");
-
-                Map<String, String> outputs = new HashMap<>();
-                if (!proc.getOutputs().isEmpty()) {
-                    boolean miss = false;
-                    log("  Cache: ");
-                    for (Entry<String, String> e : proc.getOutputs().entrySet()) {
-                        String key = e.getKey();
-                        if (key.charAt(0) == '{' && key.charAt(key.length() - 1) == '}')
-                            key = data.get(key.substring(1, key.length() - 1));
-                        else if (key.charAt(0) == '{' && key.charAt(key.length() - 1) == '}')
-                            key = Artifact.from(key.substring(1, key.length() - 1)).getLocalPath(librariesDir).getAbsolutePath();
-
-                        String value = e.getValue();
-                        if (value != null) {
-                            if (value.charAt(0) == '{' && value.charAt(value.length() - 1) == '}')
-                                value = data.get(value.substring(1, value.length() - 1));
-                            else if (value.charAt(0) == '\'' && value.charAt(value.length() - 1) == '\'')
-                                value = value.substring(1, value.length() - 1);
-                        }
 
-                        if (key == null || value == null) {
-                            error("  Invalid configuration, bad output config: [" + e.getKey() + ": " + e.getValue() + "]");
-                            return false;
-                        }
+            // Files every processor only reads, sharing them doesn't order anything.
+            Set<String> readOnly = new HashSet<>();
+            readOnly.add(minecraft.getAbsolutePath());
+            for (Library lib : profile.getLibraries())
+                readOnly.add(lib.getName().getLocalPath(librariesDir).getAbsolutePath());
+            for (Entry<String, String> e : profile.getData(isClient).entrySet()) {
+                if (resolveData(e.getValue(), librariesDir) == null)
+                    readOnly.add(data.get(e.getKey()));
+            }
 
-                        outputs.put(key, value);
-                        File artifact = new File(key);
-                        if (!artifact.exists()) {
-                            log("    " + key + " Missing");
-                            miss = true;
-                        } else {
-                            String sha = DownloadUtils.getSha1(artifact);
-                            if (sha.equals(value)) {
-                                log("    " + key + " Validated: " + value);
-                            } else {
-                                log("    " + key);
-                                log("      Expected: " + value);
-                                log("      Actual:   " + sha);
-                                miss = true;
-                                artifact.delete();
-                            }
-                        }
-                    }
-                    if (!miss) {
-                        log("  Cache Hit!");
-                        continue;
-                    }
+            progress.set(0);
+            List<Step> steps = new ArrayList<>();
+            for (Processor proc : processors) {
+                Step step = resolve(proc, steps.size(), librariesDir);
+                if (step == null)
+                    return false;
+                for (String input : step.inputs) {
+                    CompletableFuture<Boolean> download = pending.get(input);
+                    if (download != null)
+                        step.downloads.add(download);
                 }
+                link(steps, step, readOnly);
+                steps.add(step);
+            }
 
-                File jar = proc.getJar().getLocalPath(librariesDir);
-                if (!jar.exists() || !jar.isFile()) {
-                    error("  Missing Jar for processor: " + jar.getAbsolutePath());
-                    return false;
+            if (THREADS <= 1 || steps.size() <= 1) {
+                for (Step step : steps) {
+                    if (step.downloads.stream().anyMatch(d -> !d.join()) || !run(step, runtime, forks, cache))
+                        return false;
                 }
+                return true;
+            }
+            return runParallel(steps, runtime, forks, cache);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            cache.save();
+            InstallMetrics.phase("processors", start);
+        }
+    }
 
-                // Locate main class in jar file
-                JarFile jarFile = new JarFile(jar);
-                String mainClass = jarFile.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
-                jarFile.close();
+    /*
+     * Resolves every data entry before touching the disk, then extracts the ones that live in the installer concurrently.
+     * Extracted files go to the user's data cache keyed by the entry's crc and size, and are tracked in a HashCache there,
+     * so a later install with the same files reuses them as long as nobody changed them since.
+     * If the cache can't be written, everything goes to a fresh temp folder instead.
+     */
+    private boolean extractData(File librariesDir) throws IOException {
+        JarExtractor jar = JarExtractor.get();
+        boolean useCache;
+        try {
+            useCache = Files.isWritable(Files.createDirectories(DATA_CACHE.toPath()));
+        } catch (IOException e) {
+            useCache = false;
+        }
+        if (!useCache)
+            monitor.message("Data cache " + DATA_CACHE + " is not writable, extracting to a temporary directory");
+        Map<String, String> resolved = new LinkedHashMap<>();
+        Map<String, File> extract = new LinkedHashMap<>();
+        Path temp = null;
+        for (Entry<String, String> e : data.entrySet()) {
+            String value = e.getValue();
+            String local = resolveData(value, librariesDir);
+            if (local != null) {
+                resolved.put(e.getKey(), local);
+            } else {
+                String key = useCache ? jar.getContentKey(value) : null;
+                File target;
+                if (key != null) {
+                    target = Paths.get(DATA_CACHE.getAbsolutePath(), key, value).toFile();
+                } else {
+                    if (temp == null) {
+                        temp = Files.createTempDirectory("forge_installer");
+                        monitor.message("Created Temporary Directory: " + temp);
+                    }
+                    target = Paths.get(temp.toString(), value).toFile();
+                }
+                extract.put(value, target);
+                resolved.put(e.getKey(), target.getAbsolutePath());
+            }
+        }
 
-                if (mainClass == null || mainClass.isEmpty()) {
-                    error("  Jar does not have main class: " + jar.getAbsolutePath());
-                    return false;
+        if (!extract.isEmpty()) {
+            monitor.start("Extracting data files");
+            HashCache cache = HashCache.get(DATA_CACHE);
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(extract.size(), Runtime.getRuntime().availableProcessors()), new NamedThreadFactory("Installer-Extract"));
+            try {
+                Map<String, Future<Boolean>> results = new LinkedHashMap<>();
+                for (Entry<String, File> e : extract.entrySet()) {
+                    String value = e.getKey();
+                    File target = e.getValue();
+                    results.put(value, pool.submit(() -> {
+                        if (target.isFile() && cache.getCached(target) != null)
+                            return true;
+                        String sha1 = jar.extract(value, target, null);
+                        if (sha1 == null)
+                            return false;
+                        cache.put(target, sha1);
+                        return true;
+                    }));
                 }
-                monitor.message("  MainClass: " + mainClass, MessagePriority.LOW);
 
-                List<URL> classpath = new ArrayList<>();
                 StringBuilder err = new StringBuilder();
-                monitor.message("  Classpath:", MessagePriority.LOW);
-                monitor.message("    " + jar.getAbsolutePath(), MessagePriority.LOW);
-                classpath.add(jar.toURI().toURL());
-                for (Artifact dep : proc.getClasspath()) {
-                    File lib = dep.getLocalPath(librariesDir);
-                    if (!lib.exists() || !lib.isFile())
-                        err.append("\n  ").append(dep.getDescriptor());
-                    classpath.add(lib.toURI().toURL());
-                    monitor.message("    " + lib.getAbsolutePath(), MessagePriority.LOW);
+                double steps = results.size();
+                int progress = 1;
+                for (Entry<String, Future<Boolean>> e : results.entrySet()) {
+                    boolean success;
+                    try {
+                        success = e.getValue().get();
+                    } catch (ExecutionException ex) {
+                        ex.getCause().printStackTrace();
+                        success = false;
+                    }
+                    monitor.message("  Extracting: " + e.getKey() + (success ? "" : " - Failed"));
+                    monitor.progress(progress++ / steps);
+                    if (!success)
+                        err.append("\n  ").append(e.getKey());
                 }
                 if (err.length() > 0) {
-                    error("  Missing Processor dependancies: " + err.toString());
+                    error("Failed to extract files from archive: " + err.toString());
                     return false;
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                pool.shutdownNow();
+                cache.save();
+            }
+        }
 
-                List<String> args = new ArrayList<>();
-                for (String arg : proc.getArgs()) {
-                    char start = arg.charAt(0);
-                    char end = arg.charAt(arg.length() - 1);
-
-                    if (start == '[' && end == ']') //Library
-                        args.add(Artifact.from(arg.substring(1, arg.length() - 1)).getLocalPath(librariesDir).getAbsolutePath());
-                    else if (start == '{' && end == '}') { // Data
-                        String key = arg.substring(1, arg.length() - 1);
-                        String value = data.get(key);
-                        if (value == null)
-                            err.append("\n  ").append(key);
-                        args.add(value);
-                    } else
-                        args.add(arg);
-                }
-                if (err.length() > 0) {
-                    error("  Missing Processor data values: " + err.toString());
-                    return false;
-                }
-                monitor.message("  Args: " + args.stream().map(a -> a.indexOf(' ') != -1 || a.indexOf(',') != -1 ? '"' + a + '"' : a).collect(Collectors.joining(", ")), MessagePriority.LOW);
-
-                ClassLoader cl = new URLClassLoader(classpath.toArray(new URL[classpath.size()]), getParentClassloader());
-                try {
-                    Class<?> cls = Class.forName(mainClass, true, cl);
-                    Method main = cls.getDeclaredMethod("main", String[].class);
-                    main.invoke(null, (Object)args.toArray(new String[args.size()]));
-                } catch (InvocationTargetException ite) {
-                    Throwable e = ite.getCause();
-                    if (e.getMessage() == null)
-                        error("Failed to run processor: " + e.getClass().getName() + "\nSee log for more details.");
-                    else
-                        error("Failed to run processor: " + e.getClass().getName() + ":" + e.getMessage() + "\nSee log for more details.");
-                    return false;
-                } catch (Throwable e) {
-                    e.printStackTrace();
-                    if (e.getMessage() == null)
-                        error("Failed to run processor: " + e.getClass().getName() + "\nSee log for more details.");
-                    else
-                        error("Failed to run processor: " + e.getClass().getName() + ":" + e.getMessage() + "\nSee log for more details.");
-                    return false;
-                }
+        data.putAll(resolved);
+        return true;
+    }
+
+    /**
+     * @return The value of a data entry that points at an artifact or is a literal, or null for a file that has to be extracted from the installer.
+     */
+    private static String resolveData(String value, File librariesDir) {
+        if (value.charAt(0) == '[' && value.charAt(value.length() - 1) == ']') //Artifact
+            return Artifact.from(value.substring(1, value.length() -1)).getLocalPath(librariesDir).getAbsolutePath();
+        if (value.charAt(0) == '\'' && value.charAt(value.length() - 1) == '\'') //Literal
+            return value.substring(1, value.length() -1);
+        return null;
+    }
+
+    /*
+     * Resolves the declared outputs of a processor to file paths and expected sha1s.
+     * Returns null if one of them refers to data that doesn't exist.
+     */
+    private static Map<String, String> resolveOutputs(Processor proc, File librariesDir, Map<String, String> data) {
+        Map<String, String> ret = new LinkedHashMap<>();
+        for (Entry<String, String> e : proc.getOutputs().entrySet()) {
+            String key = e.getKey();
+            if (key.charAt(0) == '{' && key.charAt(key.length() - 1) == '}')
+                key = data.get(key.substring(1, key.length() - 1));
+            else if (key.charAt(0) == '[' && key.charAt(key.length() - 1) == ']')
+                key = Artifact.from(key.substring(1, key.length() - 1)).getLocalPath(librariesDir).getAbsolutePath();
+
+            String value = e.getValue();
+            if (value != null) {
+                if (value.charAt(0) == '{' && value.charAt(value.length() - 1) == '}')
+                    value = data.get(value.substring(1, value.length() - 1));
+                else if (value.charAt(0) == '\'' && value.charAt(value.length() - 1) == '\'')
+                    value = value.substring(1, value.length() - 1);
+            }
+
+            if (key == null || value == null)
+                return null;
+            ret.put(key, value);
+        }
+        return ret;
+    }
+
+    /*
+     * Resolves everything a processor reads and writes up front, so we can tell which processors are independent of each other.
+     * Existence of the files is checked when the processor actually runs, as earlier processors may create them.
+     */
+    private Step resolve(Processor proc, int index, File librariesDir) {
+        Step step = new Step(proc, proc.getJar().getName() + " #" + (index + 1)); // The same jar is often run more than once.
+
+        Map<String, String> outputs = resolveOutputs(proc, librariesDir, data);
+        if (outputs == null) {
+            error("  Invalid configuration, bad output config: " + proc.getOutputs());
+            return null;
+        }
+        step.outputs.putAll(outputs);
+
+        step.jar = proc.getJar().getLocalPath(librariesDir);
+        step.inputs.add(step.jar.getAbsolutePath());
+        for (Artifact dep : proc.getClasspath()) {
+            File lib = dep.getLocalPath(librariesDir);
+            step.classpath.add(lib);
+            step.inputs.add(lib.getAbsolutePath());
+        }
+
+        StringBuilder err = new StringBuilder();
+        for (String arg : proc.getArgs()) {
+            char start = arg.charAt(0);
+            char end = arg.charAt(arg.length() - 1);
+
+            if (start == '[' && end == ']') //Library
+                step.args.add(Artifact.from(arg.substring(1, arg.length() - 1)).getLocalPath(librariesDir).getAbsolutePath());
+            else if (start == '{' && end == '}') { // Data
+                String key = arg.substring(1, arg.length() - 1);
+                String value = data.get(key);
+                if (value == null)
+                    err.append("\n  ").append(key);
+                step.args.add(value);
+            } else
+                step.args.add(arg);
+        }
+        if (err.length() > 0) {
+            error("  Missing Processor data values: " + err.toString());
+            return null;
+        }
+        step.inputs.addAll(step.args);
+
+        return step;
+    }
+
+    /*
+     * A processor has to wait for an earlier one if it reads what the other writes, writes what the other reads, or they write the same file.
+     * Without declared outputs we can't know what a processor touches, so it waits for everything before it and everything after waits for it.
+     * Processors may also write files they don't declare, so any other file both of them are given is treated as written by the first one,
+     * unless it is a library, the minecraft jar or a data file from the installer, which nothing writes.
+     */
+    private static void link(List<Step> previous, Step step, Set<String> readOnly) {
+        for (Step prev : previous) {
+            if (step.outputs.isEmpty() || prev.outputs.isEmpty() ||
+                !Collections.disjoint(prev.outputs.keySet(), step.inputs) ||
+                !Collections.disjoint(prev.outputs.keySet(), step.outputs.keySet()) ||
+                !Collections.disjoint(prev.inputs, step.outputs.keySet()) ||
+                sharesFile(prev, step, readOnly))
+                step.dependencies.add(prev);
+        }
+    }
+
+    private static boolean sharesFile(Step prev, Step step, Set<String> readOnly) {
+        for (String arg : step.args) {
+            if (prev.args.contains(arg) && !readOnly.contains(arg) && new File(arg).isAbsolute())
+                return true;
+        }
+        return false;
+    }
+
+    private boolean runParallel(List<Step> steps, ProcessorRuntime runtime, ForkedJvmPool forks, HashCache cache) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(THREADS, steps.size()), new NamedThreadFactory("Installer-Processor"));
+        try {
+            Map<Step, CompletableFuture<Boolean>> futures = new HashMap<>();
+            for (Step step : steps) {
+                List<CompletableFuture<Boolean>> deps = step.dependencies.stream().map(futures::get).collect(Collectors.toList());
+                deps.addAll(step.downloads);
+                futures.put(step, CompletableFuture.allOf(deps.toArray(new CompletableFuture<?>[0])).thenApplyAsync(v -> {
+                    if (deps.stream().anyMatch(d -> !d.join()))
+                        return false; // A processor or download we depend on failed, and already reported why.
+                    return run(step, runtime, forks, cache);
+                }, pool));
+            }
+
+            boolean ret = true;
+            for (Step step : steps)
+                ret &= futures.get(step).get();
+            return ret;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            error("Failed to run processor: " + e.getCause());
+            return false;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-                if (!outputs.isEmpty()) {
-                    for (Entry<String, String> e : outputs.entrySet()) {
-                        File artifact = new File(e.getKey());
-                        if (!artifact.exists()) {
-                            err.append("\n    ").append(e.getKey()).append(" missing");
+    private boolean run(Step step, ProcessorRuntime runtime, ForkedJvmPool forks, HashCache cache) {
+        long start = System.nanoTime();
+        // Everything logged for a step, and everything its processor prints, is tagged with its name, several may be running at once.
+        String previous = LineCaptureStream.setSource(step.name);
+        boolean success;
+        try {
+            success = execute(step, runtime, forks, cache);
+        } finally {
+            LineCaptureStream.setSource(previous);
+        }
+        InstallMetrics.processor(step.processor.getJar().getDescriptor(), System.nanoTime() - start, !success ? "failed" : step.cached ? "cached" : "ran");
+        return success;
+    }
+
+    private boolean execute(Step step, ProcessorRuntime runtime, ForkedJvmPool forks, HashCache cache) {
+        if (cancelled)
+            return false;
+        monitor.progress((double) progress.incrementAndGet() / processors.size());
+        try {
+            log("===============================================================================");
+
+            Map<String, String> outputs = step.outputs;
+            ArtifactCache shared = ArtifactCache.get();
+            if (!outputs.isEmpty()) {
+                boolean miss = false;
+                log("  Cache: ");
+                for (Entry<String, String> e : outputs.entrySet()) {
+                    String key = e.getKey();
+                    String value = e.getValue();
+                    File artifact = new File(key);
+                    if (!artifact.exists() && shared != null && shared.fetch(value, artifact)) {
+                        cache.put(artifact, value);
+                        log("    " + key + " Found in shared cache: " + value);
+                    } else if (!artifact.exists()) {
+                        log("    " + key + " Missing");
+                        miss = true;
+                    } else {
+                        String sha = cache.getSha1(artifact);
+                        if (sha.equals(value)) {
+                            log("    " + key + " Validated: " + value);
                         } else {
-                            String sha = DownloadUtils.getSha1(artifact);
-                            if (sha.equals(e.getValue())) {
-                                log("  Output: " + e.getKey() + " Checksum Validated: " + sha);
-                            } else {
-                                err.append("\n    ").append(e.getKey())
-                                   .append("\n      Expected: ").append(e.getValue())
-                                   .append("\n      Actual:   ").append(sha);
-                                if (!artifact.delete())
-                                    err.append("\n      Could not delete file");
-                            }
+                            log("    " + key);
+                            log("      Expected: " + value);
+                            log("      Actual:   " + sha);
+                            miss = true;
+                            artifact.delete();
                         }
                     }
-                    if (err.length() > 0) {
-                        error("  Processor failed, invalid outputs:" + err.toString());
+                }
+                if (!miss) {
+                    log("  Cache Hit!");
+                    step.cached = true;
+                    return true;
+                }
+
+                // Outputs that were there may be hard links into the shared cache, writing over them would change every other copy.
+                for (String key : outputs.keySet()) {
+                    File artifact = new File(key);
+                    if (artifact.exists() && !artifact.delete()) {
+                        error("  Could not delete old processor output: " + key);
                         return false;
                     }
                 }
             }
 
+            File jar = step.jar;
+            if (!jar.exists() || !jar.isFile()) {
+                error("  Missing Jar for processor: " + jar.getAbsolutePath());
+                return false;
+            }
+
+            // Locate main class in jar file
+            String mainClass = runtime.getMainClass(jar);
+
+            if (mainClass == null || mainClass.isEmpty()) {
+                error("  Jar does not have main class: " + jar.getAbsolutePath());
+                return false;
+            }
+            log("  MainClass: " + mainClass, MessagePriority.LOW);
+
+            StringBuilder err = new StringBuilder();
+            log("  Classpath:", MessagePriority.LOW);
+            log("    " + jar.getAbsolutePath(), MessagePriority.LOW);
+            for (int x = 0; x < step.classpath.size(); x++) {
+                File lib = step.classpath.get(x);
+                if (!lib.exists() || !lib.isFile())
+                    err.append("\n  ").append(step.processor.getClasspath()[x].getDescriptor());
+                log("    " + lib.getAbsolutePath(), MessagePriority.LOW);
+            }
+            if (err.length() > 0) {
+                error("  Missing Processor dependancies: " + err.toString());
+                return false;
+            }
+
+            List<String> args = step.args;
+            log("  Args: " + args.stream().map(a -> a.indexOf(' ') != -1 || a.indexOf(',') != -1 ? '"' + a + '"' : a).collect(Collectors.joining(", ")), MessagePriority.LOW);
+
+            String source = LineCaptureStream.getSource();
+            try {
+                if (forks != null) {
+                    List<File> classpath = new ArrayList<>();
+                    classpath.add(jar);
+                    classpath.addAll(step.classpath);
+                    int exit = forks.run(classpath, mainClass, args, (line, priority) -> monitor.message(LineCaptureStream.format(source, line), priority));
+                    if (exit != 0) {
+                        error("Failed to run processor: Exit code " + exit + "\nSee log for more details.");
+                        return false;
+                    }
+                } else {
+                    List<String> key = new ArrayList<>();
+                    key.add(step.processor.getJar().getDescriptor());
+                    for (Artifact dep : step.processor.getClasspath())
+                        key.add(dep.getDescriptor());
+                    ProcessorRuntime.Tool tool = runtime.acquire(key, jar, step.classpath, mainClass);
+                    try {
+                        tool.getMain().invoke(null, (Object)args.toArray(new String[args.size()]));
+                    } finally {
+                        runtime.release(tool);
+                    }
+                }
+            } catch (InvocationTargetException ite) {
+                Throwable e = ite.getCause();
+                if (e.getMessage() == null)
+                    error("Failed to run processor: " + e.getClass().getName() + "\nSee log for more details.");
+                else
+                    error("Failed to run processor: " + e.getClass().getName() + ":" + e.getMessage() + "\nSee log for more details.");
+                return false;
+            } catch (Throwable e) {
+                e.printStackTrace();
+                if (e.getMessage() == null)
+                    error("Failed to run processor: " + e.getClass().getName() + "\nSee log for more details.");
+                else
+                    error("Failed to run processor: " + e.getClass().getName() + ":" + e.getMessage() + "\nSee log for more details.");
+                return false;
+            }
+
+            if (!outputs.isEmpty()) {
+                for (Entry<String, String> e : outputs.entrySet()) {
+                    File artifact = new File(e.getKey());
+                    if (!artifact.exists()) {
+                        err.append("\n    ").append(e.getKey()).append(" missing");
+                    } else {
+                        String sha = cache.getSha1(artifact);
+                        if (sha.equals(e.getValue())) {
+                            log("  Output: " + e.getKey() + " Checksum Validated: " + sha);
+                            if (shared != null)
+                                shared.store(sha, artifact);
+                        } else {
+                            err.append("\n    ").append(e.getKey())
+                               .append("\n      Expected: ").append(e.getValue())
+                               .append("\n      Actual:   ").append(sha);
+                            if (!artifact.delete())
+                                err.append("\n      Could not delete file");
+                        }
+                    }
+                }
+                if (err.length() > 0) {
+                    error("  Processor failed, invalid outputs:" + err.toString());
+                    return false;
+                }
+            }
             return true;
         } catch (IOException e) {
             e.printStackTrace();
@@ -273,32 +628,35 @@ public class PostProcessors {
         }
     }
 
+    private static class Step {
+        private final Processor processor;
+        private final String name;
+        private final Map<String, String> outputs = new LinkedHashMap<>();
+        private final Set<String> inputs = new HashSet<>();
+        private final List<File> classpath = new ArrayList<>();
+        private final List<String> args = new ArrayList<>();
+        private final List<Step> dependencies = new ArrayList<>();
+        private final List<CompletableFuture<Boolean>> downloads = new ArrayList<>();
+        private File jar;
+        private boolean cached = false;
+
+        private Step(Processor processor, String name) {
+            this.processor = processor;
+            this.name = name;
+        }
+    }
+
     private void error(String message) {
         if (!SimpleInstaller.headless)
             JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-        for (String line : message.split("\n"))
-            monitor.message(line);
+        log(message);
     }
     private void log(String message) {
-        for (String line : message.split("\n"))
-            monitor.message(line);
+        log(message, MessagePriority.NORMAL);
     }
-
-    private static boolean clChecked = false;
-    private static ClassLoader parentClassLoader = null;
-    @SuppressWarnings("unused")
-    private synchronized ClassLoader getParentClassloader() { //Reflectively try and get the platform classloader, done this way to prevent hard dep on J9.
-        if (!clChecked) {
-            clChecked = true;
-            if (!System.getProperty("java.version").startsWith("1.")) { //in 9+ the changed from 1.8 to just 9. So this essentially detects if we're <9
-                try {
-                    Method getPlatform = ClassLoader.class.getDeclaredMethod("getPlatformClassLoader");
-                    parentClassLoader = (ClassLoader)getPlatform.invoke(null);
-                } catch (NoSuchMethodException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-                    log("No platform classloader: " + System.getProperty("java.version"));
-                }
-            }
-        }
-        return parentClassLoader;
+    private void log(String message, MessagePriority priority) {
+        String source = LineCaptureStream.getSource();
+        for (String line : message.split("\n"))
+            monitor.message(LineCaptureStream.format(source, line), priority);
     }
 }
@@ -0,0 +1,128 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.NamedThreadFactory;
+import net.minecraftforge.installer.json.Install;
+import net.minecraftforge.installer.json.Util;
+import net.minecraftforge.installer.json.Version;
+import net.minecraftforge.installer.json.Version.Download;
+
+/**
+ * Starts the round trips a client install has to make before it gets going, as soon as the profile is loaded: the mirror list and
+ * probes next to Mojang's version manifest, the vanilla json and the client jar. Each starts the moment what it needs is known, and
+ * the install picks up the results when it gets there, fetching them itself as before if anything went wrong.
+ *
+ * Nothing is written to the minecraft folder until the install runs, the json and jar are fetched into a temp folder and moved in then.
+ */
+public class Prefetch {
+    private final File target;
+    private final ExecutorService pool = Executors.newFixedThreadPool(2, new NamedThreadFactory("Installer-Prefetch"));
+    private final DeferredCallback log = new DeferredCallback();
+    private final CompletableFuture<Void> mirrors;
+    private final CompletableFuture<File> json;
+    private final CompletableFuture<File> client;
+    private Path temp;
+
+    public Prefetch(Install profile, File target) {
+        this.target = target;
+        this.mirrors = CompletableFuture.runAsync(profile::getMirrors, pool); // Later lookups wait for this one instead of starting their own.
+
+        File existing = new File(target, "client.json");
+        if (new File(target, "client.jar").exists()) {
+            json = CompletableFuture.completedFuture(null);
+            client = CompletableFuture.completedFuture(null);
+        } else {
+            json = CompletableFuture.supplyAsync(() -> existing.exists() ? existing : fetchJson(profile), pool);
+            client = json.thenApplyAsync(file -> file == null ? null : fetchClient(profile, file), pool);
+        }
+        CompletableFuture.allOf(mirrors, client).whenComplete((v, e) -> pool.shutdown());
+    }
+
+    private File fetchJson(Install profile) {
+        try {
+            File file = getTemp().resolve("client.json").toFile();
+            file.deleteOnExit();
+            return Util.getVanillaDownloads(profile.getMinecraft(), file) == null ? null : file;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private File fetchClient(Install profile, File json) {
+        try {
+            Download download = Util.getVanillaDownloads(profile.getMinecraft(), json).getDownload("client");
+            if (download == null)
+                return null;
+            File file = getTemp().resolve("client.jar").toFile();
+            file.deleteOnExit();
+            log.message("Prefetching minecraft client");
+            return DownloadUtils.download(log, null, download, file) ? file : null; // Not profile.getMirror(), that would wait for the mirror probe.
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private synchronized Path getTemp() throws IOException {
+        if (temp == null) {
+            temp = Files.createTempDirectory("forge_installer_prefetch");
+            temp.toFile().deleteOnExit();
+        }
+        return temp;
+    }
+
+    /**
+     * Waits for the prefetched client, and moves it and its json into the minecraft folder.
+     * @return False if this prefetch was for another folder or failed, the caller should fetch them itself.
+     */
+    boolean install(File target, ProgressCallback monitor) throws ActionCanceledException {
+        if (!this.target.getAbsoluteFile().equals(target.getAbsoluteFile()))
+            return false;
+        try {
+            File jar = client.get();
+            File file = json.get();
+            log.replay(monitor); // Only written by the client download, which is done now.
+            if (jar == null || file == null)
+                return false;
+            File clientJson = new File(target, "client.json");
+            if (!file.equals(clientJson))
+                Files.move(file.toPath(), clientJson.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(jar.toPath(), new File(target, "client.jar").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (InterruptedException e) {
+            throw new ActionCanceledException(e);
+        } catch (ExecutionException | IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Entry point of the JVMs started by {@link ForkedJvmPool}. Reads processor jobs from stdin one after the other,
+ * runs each in its own classloader and reports the result on stdout as a line starting with the token it was started with.
+ *
+ * Job format, written with DataOutputStream: int classpath count (negative to exit), classpath entries, main class, int arg count, args.
+ */
+public class ProcessorHost {
+    public static void main(String[] args) throws IOException {
+        String token = args[0];
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8");
+        System.setOut(out);
+        System.setErr(out); // One stream so stdout and stderr lines arrive at the installer whole and in order.
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        while (true) {
+            int count;
+            try {
+                count = in.readInt();
+            } catch (EOFException e) {
+                return; // Installer went away.
+            }
+            if (count < 0)
+                return;
+
+            URL[] classpath = new URL[count];
+            for (int x = 0; x < count; x++)
+                classpath[x] = new File(in.readUTF()).toURI().toURL();
+            String mainClass = in.readUTF();
+            String[] jobArgs = new String[in.readInt()];
+            for (int x = 0; x < jobArgs.length; x++)
+                jobArgs[x] = in.readUTF();
+
+            int exit = 0;
+            try (URLClassLoader cl = new URLClassLoader(classpath, ProcessorRuntime.getParentClassloader())) {
+                Method main = Class.forName(mainClass, true, cl).getDeclaredMethod("main", String[].class);
+                main.invoke(null, (Object)jobArgs);
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace();
+                exit = 1;
+            } catch (Throwable e) {
+                e.printStackTrace();
+                exit = 1;
+            }
+            out.println(token + ' ' + exit);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Keeps the classloaders of processors alive for the length of an install, keyed by the artifacts of their jar and classpath.
+ * Profiles often run the same tool several times with different arguments, this lets those runs share loaded classes and JIT work.
+ * Keying by artifact rather than file lets installs of the same profile into several folders share one runtime.
+ *
+ * Tools keep static state between runs, so a classloader is only ever used by one running processor at a time. Processors running
+ * side by side each check out their own, and give it back when done for the next run of the same tool to reuse.
+ */
+class ProcessorRuntime implements Closeable {
+    private final Map<File, String> mainClasses = new HashMap<>();
+    private final Map<List<String>, Deque<Tool>> idle = new HashMap<>();
+    private boolean closed = false;
+
+    /**
+     * @return The Main-Class attribute of the jar's manifest, or null if there is none.
+     */
+    synchronized String getMainClass(File jar) throws IOException {
+        if (!mainClasses.containsKey(jar)) {
+            try (JarFile jarFile = new JarFile(jar)) {
+                Manifest manifest = jarFile.getManifest();
+                mainClasses.put(jar, manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS));
+            }
+        }
+        return mainClasses.get(jar);
+    }
+
+    /**
+     * Checks out a tool nobody else is running, loading a new one if every loaded copy is busy. Must be given back with {@link #release(Tool)}.
+     * @param key The descriptors of the jar and its classpath, which identify their content.
+     */
+    Tool acquire(List<String> key, File jar, List<File> classpath, String mainClass) throws IOException, ReflectiveOperationException {
+        synchronized (this) {
+            Deque<Tool> tools = idle.get(key);
+            if (tools != null) {
+                for (Iterator<Tool> itr = tools.iterator(); itr.hasNext(); ) {
+                    Tool tool = itr.next();
+                    if (tool.mainClass.equals(mainClass)) {
+                        itr.remove();
+                        return tool;
+                    }
+                }
+            }
+        }
+
+        List<File> files = new ArrayList<>();
+        files.add(jar);
+        files.addAll(classpath);
+        URL[] urls = new URL[files.size()];
+        for (int x = 0; x < urls.length; x++)
+            urls[x] = files.get(x).toURI().toURL();
+
+        URLClassLoader cl = new URLClassLoader(urls, getParentClassloader());
+        Tool tool;
+        try {
+            Class<?> cls = Class.forName(mainClass, true, cl);
+            tool = new Tool(key, mainClass, cl, cls.getDeclaredMethod("main", String[].class));
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            cl.close();
+            throw e;
+        }
+        return tool;
+    }
+
+    synchronized void release(Tool tool) {
+        if (closed)
+            tool.close();
+        else
+            idle.computeIfAbsent(tool.key, k -> new ArrayDeque<>()).push(tool);
+    }
+
+    /**
+     * Closes every idle classloader, ones still checked out are closed when they are given back.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Deque<Tool> tools : idle.values())
+            tools.forEach(Tool::close);
+        idle.clear();
+        mainClasses.clear();
+    }
+
+    static class Tool {
+        private final List<String> key;
+        private final String mainClass;
+        private final URLClassLoader classloader;
+        private final Method main;
+
+        private Tool(List<String> key, String mainClass, URLClassLoader classloader, Method main) {
+            this.key = key;
+            this.mainClass = mainClass;
+            this.classloader = classloader;
+            this.main = main;
+        }
+
+        Method getMain() {
+            return main;
+        }
+
+        private void close() {
+            try {
+                classloader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static boolean clChecked = false;
+    private static ClassLoader parentClassLoader = null;
+    static synchronized ClassLoader getParentClassloader() { //Reflectively try and get the platform classloader, done this way to prevent hard dep on J9.
+        if (!clChecked) {
+            clChecked = true;
+            if (!System.getProperty("java.version").startsWith("1.")) { //in 9+ the changed from 1.8 to just 9. So this essentially detects if we're <9
+                try {
+                    Method getPlatform = ClassLoader.class.getDeclaredMethod("getPlatformClassLoader");
+                    parentClassLoader = (ClassLoader)getPlatform.invoke(null);
+                } catch (NoSuchMethodException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+                    System.out.println("No platform classloader: " + System.getProperty("java.version"));
+                }
+            }
+        }
+        return parentClassLoader;
+    }
+}
@@ -18,8 +18,13 @@
  */
 package net.minecraftforge.installer.actions;
 
+import java.io.BufferedWriter;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 public interface ProgressCallback
 {
@@ -74,27 +79,51 @@ public interface ProgressCallback
         }
     };
     
+    /**
+     * Writes to every stream from a background thread, see {@link AsyncProgressCallback}. Text is encoded once per stream
+     * in the platform charset, same as the console expects, and the streams are flushed once per batch.
+     */
     static ProgressCallback withOutputs(OutputStream... streams)
     {
-        return new ProgressCallback()
+        Writer[] writers = new Writer[streams.length];
+        for (int x = 0; x < streams.length; x++)
+            writers[x] = new BufferedWriter(new OutputStreamWriter(streams[x], Charset.defaultCharset()));
+
+        class Outputs implements ProgressCallback, Flushable
         {
             @Override
             public void message(String message, MessagePriority priority)
             {
-                message = message + System.lineSeparator();
-                for (OutputStream out : streams)
+                for (Writer out : writers)
+                {
+                    try
+                    {
+                        out.write(message);
+                        out.write(System.lineSeparator());
+                    }
+                    catch (IOException e)
+                    {
+                        // Keep going, the other outputs may still work.
+                    }
+                }
+            }
+
+            @Override
+            public void flush()
+            {
+                for (Writer out : writers)
                 {
                     try
                     {
-                        out.write(message.getBytes());
                         out.flush();
                     }
                     catch (IOException e)
                     {
-                        throw new RuntimeException(e);
+                        // Same as above
                     }
                 }
             }
-        };
+        }
+        return new AsyncProgressCallback(new Outputs());
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.NamedThreadFactory;
+import net.minecraftforge.installer.json.Artifact;
+import net.minecraftforge.installer.json.Install;
+import net.minecraftforge.installer.json.Util;
+import net.minecraftforge.installer.json.Version;
+import net.minecraftforge.installer.json.Version.Download;
+
+public class ServerInstall extends Action {
+
+    public ServerInstall(Install profile, ProgressCallback monitor) {
+        super(profile, monitor, false);
+    }
+
+    @Override
+    public boolean run(File target, Predicate<String> optionals) throws ActionCanceledException {
+        if (target.exists() && !target.isDirectory()) {
+            error("There is a file at this location, cannot install server: " + target);
+            return false;
+        }
+
+        File librariesDir = new File(target, "libraries");
+        if (!target.exists())
+            target.mkdirs();
+        librariesDir.mkdir();
+
+        this.checkCancel();
+
+        // The server jar comes from Mojang, not our mirrors, so fetch it alongside the libraries instead of before them.
+        // Its messages go out as they happen, tagged so they can be told apart from the library downloads.
+        File serverTarget = getMinecraftJar(target);
+        ProgressCallback log = (message, priority) -> monitor.message("[server jar] " + message, priority);
+        ExecutorService pool = Executors.newSingleThreadExecutor(new NamedThreadFactory("Installer-Server"));
+        try {
+            CompletableFuture<Boolean> server = serverTarget.exists() ? CompletableFuture.completedFuture(true) :
+                CompletableFuture.supplyAsync(() -> downloadServer(serverTarget, log), pool);
+
+            if (!downloadAndProcess(librariesDir, optionals, serverTarget, server))
+                return false;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        this.checkCancel();
+
+        // Extract main executable jar
+        Artifact contained = profile.getPath();
+        if (contained != null) {
+            monitor.stage("Extracting main jar:");
+            if (!DownloadUtils.extractFile(contained, new File(target, contained.getFilename()), null)) {
+                error("  Failed to extract main jar: " + contained.getFilename());
+                return false;
+            }
+            monitor.stage("  Extracted successfully");
+        }
+
+        return true;
+    }
+
+    private boolean downloadServer(File serverTarget, ProgressCallback log) {
+        log.start("Downloading minecraft server");
+        File versionJson = null;
+        try {
+            versionJson = File.createTempFile("minecraft_server", ".json");
+            versionJson.delete(); // Only downloaded if it doesn't exist.
+            Version vanilla = Util.getVanillaDownloads(profile.getMinecraft(), versionJson);
+            if (vanilla == null) {
+                error("Failed to download version manifest, can not find server jar URL.");
+                return false;
+            }
+
+            Download server = vanilla.getDownload("server");
+            if (server == null) {
+                error("Failed to download minecraft server, info missing from manifest: " + profile.getMinecraft());
+                return false;
+            }
+
+            if (!DownloadUtils.download(log, null, server, serverTarget)) {
+                serverTarget.delete();
+                error("Downloading minecraft server failed, invalid checksum.\n" +
+                      "Try again, or manually place server jar to skip download.");
+                return false;
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            error("Failed to download minecraft server: " + e);
+            return false;
+        } finally {
+            if (versionJson != null)
+                versionJson.delete();
+        }
+    }
+
+    @Override
+    protected File getMinecraftJar(File target) {
+        return new File(target, "minecraft_server." + profile.getMinecraft() + ".jar");
+    }
+
+    @Override
+    public boolean isPathValid(File targetDir) {
+        return targetDir.exists() ? targetDir.isDirectory() : targetDir.getAbsoluteFile().getParentFile().isDirectory();
+    }
+
+    @Override
+    public String getFileError(File targetDir) {
+        if (targetDir.exists())
+            return "The specified path needs to be a directory";
+        else
+            return "There is no directory to put the server in, the parent folder has to exist";
+    }
+
+    @Override
+    public String getSuccessMessage() {
+        if (downlaodedCount() > 0)
+            return String.format("Successfully installed server profile %s for version %s, and downloaded %d libraries", profile.getProfile(), profile.getVersion(), downlaodedCount());
+        return String.format("Successfully installed server profile %s for version %s", profile.getProfile(), profile.getVersion());
+    }
+}
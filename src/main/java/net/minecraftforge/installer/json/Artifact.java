@@ -20,6 +20,8 @@ package net.minecraftforge.installer.json;
 
 import java.io.File;
 import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
@@ -31,6 +33,9 @@ import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
 public class Artifact {
+    // Profiles name the same artifacts over and over, in libraries, processor args, outputs and data. They are immutable, so parse each once.
+    private static final Map<String, Artifact> CACHE = new ConcurrentHashMap<>();
+
     //Descriptor parts: group:name:version[:classifier][@extension]
     private String domain;
     private String name;
@@ -42,38 +47,83 @@ public class Artifact {
     private String path;
     private String file;
     private String descriptor;
+    private volatile LocalPath local;
 
     public static Artifact from(String descriptor)
     {
-        Artifact ret = new Artifact();
-        ret.descriptor = descriptor;
-
-        String[] pts = descriptor.split(":");
-        ret.domain = pts[0];
-        ret.name = pts[1];
+        Artifact ret = CACHE.get(descriptor);
+        if (ret == null) {
+            ret = parse(descriptor);
+            Artifact old = CACHE.putIfAbsent(descriptor, ret);
+            if (old != null)
+                ret = old;
+        }
+        return ret;
+    }
 
-        int last = pts.length - 1;
-        int idx = pts[last].indexOf('@');
-        if (idx != -1) {
-            ret.ext = pts[last].substring(idx + 1);
-            pts[last] = pts[last].substring(0, idx);
+    // Package-private for the benchmarks, everything else should go through from.
+    static Artifact parse(String descriptor)
+    {
+        // Find the separators in one pass, the extension is only looked for after the last colon.
+        int[] colons = new int[3];
+        int count = 0;
+        int at = -1;
+        for (int x = 0; x < descriptor.length(); x++) {
+            char c = descriptor.charAt(x);
+            if (c == ':') {
+                if (count < colons.length)
+                    colons[count] = x;
+                count++;
+                at = -1;
+            } else if (c == '@' && at == -1) {
+                at = x;
+            }
         }
+        if (count < 2)
+            throw new IllegalArgumentException("Invalid artifact descriptor: " + descriptor);
 
-        ret.version = pts[2];
-        if (pts.length > 3)
-            ret.classifier = pts[3];
+        int end = at == -1 ? descriptor.length() : at;
+        Artifact ret = new Artifact();
+        ret.descriptor = descriptor;
+        ret.domain = descriptor.substring(0, colons[0]);
+        ret.name = descriptor.substring(colons[0] + 1, colons[1]);
+        if (count == 2) {
+            ret.version = descriptor.substring(colons[1] + 1, end);
+        } else {
+            ret.version = descriptor.substring(colons[1] + 1, colons[2]);
+            ret.classifier = descriptor.substring(colons[2] + 1, count == 3 ? end : descriptor.indexOf(':', colons[2] + 1));
+        }
+        if (at != -1)
+            ret.ext = descriptor.substring(at + 1);
 
-        ret.file = ret.name + '-' + ret.version;
-        if (ret.classifier != null) ret.file += '-' + ret.classifier;
-        ret.file += '.' + ret.ext;
+        StringBuilder buf = new StringBuilder(descriptor.length() * 2 + 8);
+        buf.append(ret.name).append('-').append(ret.version);
+        if (ret.classifier != null)
+            buf.append('-').append(ret.classifier);
+        buf.append('.').append(ret.ext);
+        ret.file = buf.toString();
 
-        ret.path = ret.domain.replace('.', '/') + '/' + ret.name + '/' + ret.version + '/' + ret.file;
+        buf.setLength(0);
+        for (int x = 0; x < ret.domain.length(); x++) {
+            char c = ret.domain.charAt(x);
+            buf.append(c == '.' ? '/' : c);
+        }
+        buf.append('/').append(ret.name).append('/').append(ret.version).append('/').append(ret.file);
+        ret.path = buf.toString();
 
         return ret;
     }
 
+    /**
+     * The last base asked for is remembered, installs resolve everything against the same libraries folder.
+     */
     public File getLocalPath(File base) {
-        return new File(base, path.replace('/', File.separatorChar));
+        LocalPath local = this.local;
+        if (local == null || !local.base.equals(base)) {
+            local = new LocalPath(base, new File(base, File.separatorChar == '/' ? path : path.replace('/', File.separatorChar)));
+            this.local = local;
+        }
+        return local.file;
     }
 
     public String getDescriptor(){ return descriptor; }
@@ -89,6 +139,16 @@ public class Artifact {
         return getDescriptor();
     }
 
+    private static class LocalPath {
+        private final File base;
+        private final File file;
+
+        private LocalPath(File base, File file) {
+            this.base = base;
+            this.file = file;
+        }
+    }
+
     public static class Adapter implements JsonDeserializer<Artifact>, JsonSerializer<Artifact> {
         @Override
         public JsonElement serialize(Artifact src, Type typeOfSrc, JsonSerializationContext context) {
@@ -23,10 +23,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
 import java.util.stream.Collectors;
 
 import net.minecraftforge.installer.DownloadUtils;
+import net.minecraftforge.installer.MirrorSelector;
 
 public class Install
 {
@@ -62,7 +62,7 @@ public class Install
     private Map<String, DataFile> data;
 
     // non-serialized values
-    private Mirror mirror;
+    private MirrorSelector mirrors;
     private boolean triedMirrors = false;
 
     public int getSpec() {
@@ -110,13 +110,30 @@ public class Install
     }
 
     public Mirror getMirror() {
+        MirrorSelector mirrors = getMirrors();
+        return mirrors == null ? null : mirrors.getMirror();
+    }
+
+    public synchronized MirrorSelector getMirrors() {
         if (getMirrorList() == null)
             return null;
-        if (!triedMirrors && mirror == null) {
+        if (!triedMirrors) {
+            triedMirrors = true;
             Mirror[] list = DownloadUtils.downloadMirrors(getMirrorList());
-            mirror = list == null ? null : list[new Random().nextInt(list.length)];
+            if (list != null && list.length > 0)
+                mirrors = new MirrorSelector(list, getProbePath());
+        }
+        return mirrors;
+    }
+
+    // Something the mirrors should have, the first library that isn't served by Mojang.
+    private String getProbePath() {
+        for (Version.Library lib : getLibraries()) {
+            Version.LibraryDownload download = lib.getDownloads() == null ? null : lib.getDownloads().getArtifact();
+            if (download != null && download.getUrl() != null && !download.getUrl().startsWith(DownloadUtils.LIBRARIES_URL))
+                return download.getPath();
         }
-        return mirror;
+        return path == null ? "" : path.getPath();
     }
 
     public boolean hideClient() {
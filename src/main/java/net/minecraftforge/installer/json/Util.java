@@ -24,8 +24,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+
 import net.minecraftforge.installer.DownloadUtils;
 
 public class Util {
@@ -49,27 +52,69 @@ public class Util {
         return GSON.fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), Manifest.class);
     }
 
+    /**
+     * Scans Mojang's version manifest for one version, stopping at the first match instead of reading every version ever released.
+     * @return The url of that version's json, or null if it isn't listed.
+     */
+    public static String findVersionUrl(InputStream stream, String version) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"versions".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String id = null;
+                String url = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "id":  id = reader.nextString(); break;
+                        case "url": url = reader.nextString(); break;
+                        default:    reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (version.equals(id))
+                    return url;
+            }
+            reader.endArray();
+        }
+        return null;
+    }
+
     public static Version loadVersion(Install profile) {
         try (InputStream stream = Util.class.getResourceAsStream(profile.getJson())) {
-            return GSON.fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), Version.class);
+            return Version.read(new JsonReader(new InputStreamReader(stream, StandardCharsets.UTF_8)), true);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     public static Version getVanillaVersion(String version, File target) {
+        return getVanillaVersion(version, target, true);
+    }
+
+    /**
+     * Like {@link #getVanillaVersion(String, File)}, but only the downloads are read, the returned version has no libraries.
+     * For fetching the vanilla jars, the libraries of the vanilla version are the launcher's job.
+     */
+    public static Version getVanillaDownloads(String version, File target) {
+        return getVanillaVersion(version, target, false);
+    }
+
+    private static Version getVanillaVersion(String version, File target, boolean libraries) {
         if (!target.exists()) {
-            Manifest manifest = DownloadUtils.downloadManifest();
-            if (manifest == null)
-                return null;
-            String url = manifest.getUrl(version);
+            String url = DownloadUtils.getVersionUrl(version);
             if (url == null)
                 return null;
             if (!DownloadUtils.downloadFile(target, url))
                 return null;
         }
         try (InputStream stream = new FileInputStream(target)) {
-            return GSON.fromJson(new InputStreamReader(stream, StandardCharsets.UTF_8), Version.class);
+            return Version.read(new JsonReader(new InputStreamReader(stream, StandardCharsets.UTF_8)), libraries);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -18,15 +18,63 @@
  */
 package net.minecraftforge.installer.json;
 
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
 public class Version {
+    private static final Type DOWNLOADS = new TypeToken<Map<String, Download>>(){}.getType();
+
     private String id;
     private Map<String, Download> downloads;
     private Library[] libraries;
 
+    /**
+     * Reads a version json one token at a time, skipping everything we don't use without binding it.
+     * @param libraries False to skip the libraries entirely, for when only the downloads are needed.
+     */
+    @SuppressWarnings("unchecked")
+    static Version read(JsonReader reader, boolean libraries) throws IOException {
+        Version ret = new Version();
+        List<Library> libs = libraries ? new ArrayList<>() : null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    ret.id = reader.nextString();
+                    break;
+                case "downloads":
+                    ret.downloads = (Map<String, Download>)Util.GSON.getAdapter(TypeToken.get(DOWNLOADS)).read(reader);
+                    break;
+                case "libraries":
+                    if (libs == null) {
+                        reader.skipValue();
+                        break;
+                    }
+                    TypeAdapter<Library> adapter = Util.GSON.getAdapter(Library.class);
+                    reader.beginArray();
+                    while (reader.hasNext())
+                        libs.add(adapter.read(reader));
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (libs != null)
+            ret.libraries = libs.toArray(new Library[libs.size()]);
+        return ret;
+    }
+
     public String getId() {
         return id;
     }
@@ -0,0 +1,116 @@
+/*
+ * Installer
+ * Copyright (c) 2016-2018.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation version 2.1
+ * of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package net.minecraftforge.installer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarExtractorTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private byte[] data;
+    private String sha1;
+    private JarExtractor extractor;
+
+    @Before
+    public void setup() throws IOException {
+        data = new byte[1 << 20];
+        new Random(0).nextBytes(data);
+        sha1 = HashFunction.SHA1.hash(data);
+
+        File jar = temp.newFile("installer.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ZipEntry stored = new ZipEntry("stored.bin");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(data.length);
+            stored.setCrc(crc.getValue());
+            zip.putNextEntry(stored);
+            zip.write(data);
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("deflated.bin"));
+            zip.write(data);
+            zip.closeEntry();
+        }
+        extractor = new JarExtractor(jar);
+    }
+
+    @Test
+    public void extractAfterInterrupt() throws Exception {
+        for (String name : new String[] { "stored.bin", "deflated.bin" }) {
+            Thread.currentThread().interrupt();
+            try {
+                extractor.extract(name, temp.newFile(), sha1);
+                fail("Interrupted extraction of " + name + " completed");
+            } catch (ClosedByInterruptException e) {
+                assertTrue(Thread.interrupted());
+            }
+            check(name);
+        }
+    }
+
+    @Test
+    public void extractAfterOtherThreadInterrupted() throws Exception {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            Thread.currentThread().interrupt();
+            try {
+                extractor.copy("stored.bin", temp.newFile());
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(error.get() instanceof ClosedByInterruptException);
+
+        check("stored.bin");
+        check("deflated.bin");
+    }
+
+    private void check(String name) throws IOException {
+        File target = temp.newFile();
+        assertEquals(sha1, extractor.extract(name, target, sha1));
+        assertEquals(sha1, HashFunction.SHA1.hash(Files.readAllBytes(target.toPath())));
+
+        target = temp.newFile();
+        assertTrue(extractor.copy(name, target));
+        assertEquals(sha1, HashFunction.SHA1.hash(target));
+    }
+}